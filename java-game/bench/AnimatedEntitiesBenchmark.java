@@ -0,0 +1,187 @@
+import java.awt.image.BufferedImage;
+import java.lang.ref.Reference;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Animates 10k NPCs that walk, run, idle and fall, once the way Player used to
+// (every entity with an EnumMap of AnimationPlayers and an if/else chain) and
+// once with one AnimationStateMachine shared by all of them and two primitive
+// fields per entity. Reports the update throughput of all entities and the
+// heap each entity keeps for its animation.
+//   java -cp out:bin:lib/gson.jar AnimatedEntitiesBenchmark --entities=10000
+public class AnimatedEntitiesBenchmark {
+    static final double DT = Game.UPDATE_STEP_DURATION;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int[] entityCounts = { 10_000 };
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            switch (parts[0]) {
+                case "--entities" -> entityCounts = HotPathBenchmarks.parseInts(parts[1]);
+                default -> System.err.println("Unknown option ignored: " + arg);
+            }
+        }
+        Animation idle = new Animation("player/idle", 9, 10, 32, 32, true);
+        Animation walk = new Animation("player/walk", 11, 12, 32, 32, true);
+        Animation run = new Animation("player/run", 15, 16, 32, 32, true);
+        Animation fall = new Animation("player/jumpFall", 2, 10, 32, 32, true);
+
+        AnimationStateMachine<Npc> machine = new AnimationStateMachine<>();
+        int idleState = machine.addState("IDLE", idle);
+        int walkState = machine.addState("WALK", walk);
+        int runState = machine.addState("RUN", run);
+        int fallState = machine.addState("FALL", fall);
+        machine.addTransition(AnimationStateMachine.ANY, fallState, npc -> !npc.onGround);
+        machine.addTransition(AnimationStateMachine.ANY, runState, npc -> npc.speed > 2);
+        machine.addTransition(AnimationStateMachine.ANY, walkState, npc -> npc.speed > 0);
+        machine.addTransition(AnimationStateMachine.ANY, idleState, npc -> true);
+
+        for (int entities : entityCounts) {
+            String params = "entities=" + entities;
+
+            long before = MapLoadBenchmark.usedAfterGc();
+            LegacyNpc[] legacy = new LegacyNpc[entities];
+            for (int i = 0; i < entities; i++) {
+                legacy[i] = new LegacyNpc(idle, walk, run, fall);
+            }
+            long legacyBytes = MapLoadBenchmark.usedAfterGc() - before;
+            int[] tick = { 0 };
+            Bench.measure("EnumMap of AnimationPlayers per entity", params, () -> {
+                int t = tick[0]++;
+                BufferedImage last = null;
+                for (int i = 0; i < legacy.length; i++) {
+                    legacy[i].behave(i, t);
+                    last = legacy[i].updateAnimation();
+                }
+                Bench.sink = last;
+            });
+            Reference.reachabilityFence(legacy);
+
+            before = MapLoadBenchmark.usedAfterGc();
+            Npc[] npcs = new Npc[entities];
+            for (int i = 0; i < entities; i++) {
+                npcs[i] = new Npc();
+            }
+            long sharedBytes = MapLoadBenchmark.usedAfterGc() - before;
+            Bench.measure("shared AnimationStateMachine", params, () -> {
+                int t = tick[0]++;
+                BufferedImage last = null;
+                for (int i = 0; i < npcs.length; i++) {
+                    Npc npc = npcs[i];
+                    npc.behave(i, t);
+                    int next = machine.nextState(npc, npc.animState);
+                    if (next != npc.animState) {
+                        npc.animState = next;
+                        npc.animTime = 0;
+                    }
+                    npc.animTime += DT;
+                    last = machine.frame(npc.animState, npc.animTime);
+                }
+                Bench.sink = last;
+            });
+            Reference.reachabilityFence(npcs);
+
+            System.out.printf("%d entities: %.0f bytes per entity with AnimationPlayers, %.0f with the shared machine%n",
+                    entities, legacyBytes / (double) entities, sharedBytes / (double) entities);
+        }
+        Bench.printSummary();
+    }
+
+    // every entity changes what it does now and then, at its own moments
+    static int speedAt(int i, int t) {
+        int phase = ((t + i * 7) / 90 + i) % 4;
+        return phase == 0 ? 0 : phase == 2 ? 3 : 1; // idle, walk, run, walk
+    }
+
+    static boolean onGroundAt(int i, int t) {
+        return (t + i * 13) % 240 >= 30;
+    }
+
+    static class Npc {
+        int speed;
+        boolean onGround = true;
+        int animState;
+        double animTime;
+
+        void behave(int i, int t) {
+            speed = speedAt(i, t);
+            onGround = onGroundAt(i, t);
+        }
+    }
+
+    // how Player animated before the shared state machine
+    static class LegacyNpc {
+        int speed;
+        boolean onGround = true;
+        final Map<PlayerAnimState, AnimationPlayer> animPlayerMap = new EnumMap<>(PlayerAnimState.class);
+        PlayerAnimState currAnimState = PlayerAnimState.IDLE;
+        AnimationPlayer currAnimationPlayer;
+
+        LegacyNpc(Animation idle, Animation walk, Animation run, Animation fall) {
+            animPlayerMap.put(PlayerAnimState.IDLE, new AnimationPlayer(idle));
+            animPlayerMap.put(PlayerAnimState.WALK, new AnimationPlayer(walk));
+            animPlayerMap.put(PlayerAnimState.RUN, new AnimationPlayer(run));
+            animPlayerMap.put(PlayerAnimState.JUMP_FALL, new AnimationPlayer(fall));
+            currAnimationPlayer = animPlayerMap.get(currAnimState);
+        }
+
+        void behave(int i, int t) {
+            speed = speedAt(i, t);
+            onGround = onGroundAt(i, t);
+        }
+
+        BufferedImage updateAnimation() {
+            PlayerAnimState next;
+            if (!onGround) {
+                next = PlayerAnimState.JUMP_FALL;
+            } else if (speed > 2) {
+                next = PlayerAnimState.RUN;
+            } else if (speed > 0) {
+                next = PlayerAnimState.WALK;
+            } else {
+                next = PlayerAnimState.IDLE;
+            }
+            if (next != currAnimState) {
+                currAnimState = next;
+                currAnimationPlayer = animPlayerMap.get(currAnimState);
+                currAnimationPlayer.reset();
+            }
+            return currAnimationPlayer.getCurrentFrame(DT);
+        }
+    }
+
+    // the per entity animation state Player kept before AnimationStateMachine
+    static class AnimationPlayer {
+        Animation animation;
+        double animationTime = 0.0;
+        int currentFrame = 0;
+        int endFrameCounter = 1;
+        boolean isDone = false;
+        BufferedImage fallBackImage = new GameImage().loadImage("player/idle/1.png");
+
+        AnimationPlayer(Animation anim) {
+            animation = anim;
+        }
+
+        void reset() {
+            animationTime = 0.0;
+            currentFrame = 0;
+            isDone = false;
+            endFrameCounter = 0;
+        }
+
+        BufferedImage getCurrentFrame(double dt) {
+            animationTime += dt;
+            currentFrame = (int) (animationTime / animation.frameDuration) % (animation.framesCount + 1);
+            if (!isDone && currentFrame == animation.framesCount) {
+                isDone = true;
+            }
+            if (!animation.looping && isDone) {
+                return animation.frames[animation.framesCount];
+            } else {
+                return animation.frames[currentFrame];
+            }
+        }
+    }
+}
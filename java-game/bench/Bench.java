@@ -0,0 +1,114 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+// Small benchmark harness shared by the benchmarks in this folder.
+//
+// JMH can not be used here: it generates its code into a named package, and
+// every class of the game lives in the default package, which named packages can
+// not see. measure() follows the JMH recipe instead: timed warmup iterations,
+// timed measurement iterations, throughput with its error and allocated bytes
+// per operation (what JMH reports as gc.alloc.rate.norm).
+//
+// Compile and run everything with build-bench.ps1 / build-bench.sh, or by hand
+// from the java-game folder:
+//   javac -cp lib/gson.jar -d out src/*.java bench/*.java
+//   java -cp out:bin:lib/gson.jar HotPathBenchmarks
+// (use ; instead of : as the classpath separator on Windows)
+public class Bench {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    static int warmupIterations = 3, measurementIterations = 5;
+    static long warmupMillis = 300, measurementMillis = 500;
+    // results land here so the JIT can not drop the benchmarked code as unused
+    public static volatile Object sink;
+    private static final List<String> results = new ArrayList<>();
+
+    // Runs op (one call = one operation) for the configured warmup and measurement
+    // iterations and records ops/second and allocated bytes/op
+    public static void measure(String benchmark, String params, Runnable op) {
+        for (int i = 0; i < warmupIterations; i++) {
+            runIteration(op, warmupMillis);
+        }
+        double[] opsPerSecond = new double[measurementIterations];
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long totalOps = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            long start = System.nanoTime();
+            long ops = runIteration(op, measurementMillis);
+            opsPerSecond[i] = ops / ((System.nanoTime() - start) / 1e9);
+            totalOps += ops;
+        }
+        double bytesPerOp = (THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore) / (double) totalOps;
+
+        double mean = 0;
+        for (double score : opsPerSecond) {
+            mean += score / opsPerSecond.length;
+        }
+        double variance = 0;
+        for (double score : opsPerSecond) {
+            variance += (score - mean) * (score - mean) / Math.max(1, opsPerSecond.length - 1);
+        }
+        double error = 2 * Math.sqrt(variance / opsPerSecond.length); // about 95% confidence
+        String row = String.format("%-36s %-28s %14.1f +- %10.1f ops/s %12.1f B/op", benchmark, params, mean,
+                error, bytesPerOp);
+        results.add(row);
+        System.out.println(row);
+    }
+
+    // prints every result again as one table, like JMH does at the end of a run
+    public static void printSummary() {
+        System.out.println();
+        System.out.printf("%-36s %-28s %30s %17s%n", "Benchmark", "(params)", "Score (throughput)",
+                "gc.alloc.rate.norm");
+        for (String row : results) {
+            System.out.println(row);
+        }
+    }
+
+    // calls op until the time is up, checking the clock only every few calls
+    private static long runIteration(Runnable op, long millis) {
+        long end = System.nanoTime() + millis * 1_000_000;
+        long ops = 0;
+        int batch = 1;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < batch; i++) {
+                op.run();
+            }
+            ops += batch;
+            if (batch < 1024) {
+                batch *= 2;
+            }
+        }
+        return ops;
+    }
+
+    // Runs the task for a while so the JIT can compile it, then returns the
+    // average nanoseconds per call over the measured iterations
+    public static double nsPerOp(Runnable task, int warmupIterations, int measuredIterations) {
+        for (int i = 0; i < warmupIterations; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < measuredIterations; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / (double) measuredIterations;
+    }
+
+    // Average heap bytes allocated by the current thread per call, measured after
+    // warming up so escape analysis has already removed what it can
+    public static double bytesPerOp(Runnable task, int warmupIterations, int measuredIterations) {
+        for (int i = 0; i < warmupIterations; i++) {
+            task.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < measuredIterations; i++) {
+            task.run();
+        }
+        long after = THREADS.getThreadAllocatedBytes(threadId);
+        return (after - before) / (double) measuredIterations;
+    }
+}
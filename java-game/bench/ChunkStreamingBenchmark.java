@@ -0,0 +1,73 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+// Moves an entity across a 10M tile binary map at 60 updates per second, with the
+// camera following it and the chunks streamed around the camera, and reports the
+// update time (streaming + tile queries) and the ChunkStreamer metrics.
+// Runs in real time, about 10 seconds per speed.
+//   java -cp out:bin:lib/gson.jar ChunkStreamingBenchmark
+public class ChunkStreamingBenchmark {
+    static final int TICKS = 600;
+
+    public static void main(String[] args) throws IOException {
+        int side = 3163; // 10M tiles
+        MapFile.Converter converter = new MapFile.Converter();
+        for (int gridY = 0; gridY < side; gridY++) {
+            for (int gridX = 0; gridX < side; gridX++) {
+                // floors 8 tiles apart and scattered blocks, like a level with many platforms
+                if (gridY % 8 == 0 || (gridX * 31 + gridY * 17) % 11 == 0) {
+                    converter.placeTile("grass", 1 + (gridX + gridY) % MapLoadBenchmark.VARIANTS, gridX, gridY);
+                }
+            }
+        }
+        File file = File.createTempFile("streaming", MapFile.EXTENSION);
+        file.deleteOnExit();
+        MapFile.write(file.toPath(), 32, converter.grid, converter.registry);
+        converter = null;
+
+        TileVariantRegistry registry = new TileVariantRegistry();
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 1; i <= MapLoadBenchmark.VARIANTS; i++) {
+            registry.register("grass", i, image);
+        }
+
+        run(file, registry, 2000); // warmup, so the JIT has compiled the streaming code
+        System.out.println("speed px/s  update p50 us  p99 us  max us  streamer");
+        for (int speed : new int[] { 500, 2000, 8000 }) {
+            System.out.printf("%-11d %s%n", speed, run(file, registry, speed));
+        }
+        file.delete();
+    }
+
+    static String run(File file, TileVariantRegistry registry, int speed) {
+        TileMap map = new TileMap(registry, null);
+        MapFile.load(file.toPath(), map);
+        PhysicsEntity target = new PhysicsEntity(1000, 1000, 30, 90);
+        Camera camera = new Camera(target, 1200, 800, Game.UPDATE_STEP_DURATION);
+        PhysicsTilesAround around = new PhysicsTilesAround(target, map, 32);
+        ChunkStreamer streamer = new ChunkStreamer(map, ChunkStreamer.DEFAULT_RADIUS,
+                ChunkStreamer.DEFAULT_MEMORY_BUDGET);
+        streamer.prime(camera);
+
+        long[] updateNs = new long[TICKS];
+        long next = System.nanoTime();
+        for (int tick = 0; tick < TICKS; tick++) {
+            long start = System.nanoTime();
+            streamer.update(camera);
+            target.rect.xPos += speed * Game.UPDATE_STEP_DURATION;
+            target.rect.yPos += speed * Game.UPDATE_STEP_DURATION / 2;
+            around.updatePhysicsTilesAround();
+            camera.updateCameraOffset();
+            updateNs[tick] = System.nanoTime() - start;
+            next += (long) (Game.UPDATE_STEP_DURATION * 1e9);
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+        streamer.shutdown();
+        Arrays.sort(updateNs);
+        return String.format("%13.1f %7.1f %7.1f  %s", updateNs[TICKS / 2] / 1e3, updateNs[TICKS * 99 / 100] / 1e3,
+                updateNs[TICKS - 1] / 1e3, streamer.stats());
+    }
+}
@@ -0,0 +1,102 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+
+import com.google.gson.Gson;
+
+// The per-frame hot paths of the game, each measured for every map size and, when
+// the path runs once per entity, for every entity count. One operation is one call
+// for every entity, so scores of different entity counts are not comparable.
+//   java -cp out:bin:lib/gson.jar HotPathBenchmarks
+//   java -cp out:bin:lib/gson.jar HotPathBenchmarks --maps=1000,100000 --entities=1,100
+public class HotPathBenchmarks {
+    static final int FRAME_WIDTH = 1200;
+    static final int FRAME_HEIGHT = 800;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int[] mapSizes = { 1_000, 100_000, 1_000_000 };
+        int[] entityCounts = { 1, 100, 1_000 };
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            String value = parts.length > 1 ? parts[1] : "";
+            switch (parts[0]) {
+                case "--maps" -> mapSizes = parseInts(value);
+                case "--entities" -> entityCounts = parseInts(value);
+                default -> System.err.println("Unknown option ignored: " + arg);
+            }
+        }
+
+        BufferedImage frame = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = frame.createGraphics();
+        for (int mapSize : mapSizes) {
+            MapData mapData = Headless.generateMap(mapSize);
+            Game game = new Game(mapData, FRAME_WIDTH, FRAME_HEIGHT);
+            String params = "mapSize=" + mapSize;
+
+            String json = new Gson().toJson(mapData);
+            Bench.measure("Maploader.loadMap", params, () -> Bench.sink = Maploader.loadMap(new StringReader(json)));
+
+            double offsetX = FRAME_WIDTH / 2.0 - game.player.rect.xPos;
+            double offsetY = FRAME_HEIGHT / 2.0 - game.player.rect.yPos;
+            Bench.measure("TileMap.render", params, () -> game.tileMap.render(g, offsetX, offsetY));
+
+            for (int entityCount : entityCounts) {
+                benchmarkEntities(game, mapData, params + ",entities=" + entityCount, entityCount);
+            }
+            game.physicsWorld.shutdown();
+        }
+        g.dispose();
+        Bench.printSummary();
+    }
+
+    static void benchmarkEntities(Game game, MapData mapData, String params, int entityCount) {
+        // players standing on the first floor of the generated map, spread along it
+        int floorWidth = Math.max(200, (int) Math.sqrt(mapData.tiles.size()) * 4) * mapData.tileSize;
+        double floorY = 5 * mapData.tileSize;
+        Player[] players = new Player[entityCount];
+        double[] startX = new double[entityCount];
+        for (int i = 0; i < entityCount; i++) {
+            startX[i] = 64 + (i * 97L) % (floorWidth - 128);
+            players[i] = new Player(game, startX[i], floorY - 90, 30, 90);
+            players[i].physicsTilesAround = new PhysicsTilesAround(players[i], game.tileMap, mapData.tileSize);
+            players[i].physicsTilesAround.updatePhysicsTilesAround();
+        }
+
+        Bench.measure("PhysicsTilesAround.update", params, () -> {
+            for (Player player : players) {
+                player.physicsTilesAround.updatePhysicsTilesAround();
+            }
+        });
+        // every call starts from the same spot so the players never walk off the floor
+        Bench.measure("Player.resolveCollisionX", params, () -> {
+            for (int i = 0; i < players.length; i++) {
+                players[i].rect.xPos = startX[i];
+                players[i].resolveCollisionX(i % 2 == 0 ? 4 : -4);
+            }
+        });
+        Bench.measure("Player.resolveCollisionY", params, () -> {
+            for (Player player : players) {
+                player.rect.yPos = floorY - 92;
+                player.resolveCollisionY(4); // lands on the floor
+            }
+        });
+        Bench.measure("Player.updateAnimation", params, () -> {
+            BufferedImage last = null;
+            for (Player player : players) {
+                player.updateAnimation(Game.UPDATE_STEP_DURATION);
+                last = player.sprite;
+            }
+            Bench.sink = last;
+        });
+    }
+
+    static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
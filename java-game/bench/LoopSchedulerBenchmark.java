@@ -0,0 +1,108 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+// Pacing of the game loop with LoopScheduler, without a window: every frame
+// burns a few hundred microseconds like a light frame of the game would.
+//   java -cp out:bin:lib/gson.jar LoopSchedulerBenchmark [--seconds=3]
+// Jitter: for every sleep strategy, how far the frame intervals are from the
+// 90 Hz target, how late the wait woke up and how much CPU the loop thread used.
+// Spiral of death: the updates take 25 ms (more than the 16.7 ms of game time
+// they simulate) for two seconds, then go back to 0.2 ms. Reports the longest
+// frame, the most updates in a frame and how long it took after the load to be
+// back at one or two updates per frame, with and without the catch-up cap.
+public class LoopSchedulerBenchmark {
+    static final long FRAME_NS = 1_000_000_000 / 90;
+    static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        double seconds = 3;
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            switch (parts[0]) {
+                case "--seconds" -> seconds = Double.parseDouble(parts[1]);
+                default -> System.err.println("Unknown option ignored: " + arg);
+            }
+        }
+
+        System.out.println("strategy    frames  jitter p50 us  p99 us  max us   late p50 us  p99 us  max us   cpu %");
+        for (LoopScheduler.SleepStrategy strategy : LoopScheduler.SleepStrategy.values()) {
+            jitter(strategy, seconds);
+        }
+
+        System.out.println();
+        System.out.println("catch-up          longest frame ms  max updates/frame  recovered after ms  game time dropped ms");
+        spiral("unbounded", Integer.MAX_VALUE, false);
+        spiral("cap 5", LoopScheduler.DEFAULT_MAX_CATCH_UP, false);
+        spiral("cap 5, dilation", LoopScheduler.DEFAULT_MAX_CATCH_UP, true);
+    }
+
+    static void jitter(LoopScheduler.SleepStrategy strategy, double seconds) {
+        LoopScheduler scheduler = new LoopScheduler(Game.UPDATE_STEP_DURATION, FRAME_NS);
+        scheduler.sleepStrategy = strategy;
+        LatencyHistogram jitter = new LatencyHistogram();
+        LatencyHistogram late = new LatencyHistogram();
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        long start = System.nanoTime(), last = start;
+        int frames = 0;
+        while (System.nanoTime() - start < seconds * 1e9) {
+            long now = System.nanoTime();
+            if (frames > 0) {
+                jitter.record(Math.abs(now - last - FRAME_NS));
+            }
+            last = now;
+            scheduler.beginFrame(now);
+            work(300_000);
+            long lateNs = scheduler.waitForNextFrame();
+            if (lateNs >= 0) {
+                late.record(lateNs);
+            }
+            frames++;
+        }
+        double cpu = (THREADS.getCurrentThreadCpuTime() - cpuStart) / (double) (System.nanoTime() - start);
+        System.out.printf("%-10s %7d  %13.1f %7.1f %7.1f  %12.1f %7.1f %7.1f  %6.0f%n", strategy, frames,
+                jitter.valueAtPercentile(50) / 1e3, jitter.valueAtPercentile(99) / 1e3, jitter.max() / 1e3,
+                late.valueAtPercentile(50) / 1e3, late.valueAtPercentile(99) / 1e3, late.max() / 1e3, cpu * 100);
+    }
+
+    static void spiral(String name, int maxCatchUp, boolean dilation) {
+        LoopScheduler scheduler = new LoopScheduler(Game.UPDATE_STEP_DURATION, FRAME_NS);
+        scheduler.maxCatchUp = maxCatchUp;
+        scheduler.timeDilation = dilation;
+        long start = System.nanoTime(), last = start;
+        long loadEnd = start + 2_000_000_000L;
+        long longestFrame = 0, recoveredAt = -1;
+        int maxUpdates = 0;
+        boolean first = true;
+        // gives up 10 s after the load, the unbounded loop may never recover
+        while (System.nanoTime() < loadEnd + 10_000_000_000L) {
+            long now = System.nanoTime();
+            long frameNs = now - last;
+            if (!first) {
+                longestFrame = Math.max(longestFrame, frameNs);
+            }
+            first = false;
+            last = now;
+            int steps = scheduler.beginFrame(now);
+            maxUpdates = Math.max(maxUpdates, steps);
+            for (int i = 0; i < steps; i++) {
+                work(now < loadEnd ? 25_000_000 : 200_000);
+            }
+            if (now >= loadEnd && steps <= 2 && frameNs < 2 * FRAME_NS) {
+                recoveredAt = now;
+                break;
+            }
+            scheduler.waitForNextFrame();
+        }
+        System.out.printf("%-17s %16.0f %18d %19s %21.0f%n", name, longestFrame / 1e6, maxUpdates,
+                recoveredAt < 0 ? "never" : String.format("%.0f", (recoveredAt - loadEnd) / 1e6),
+                scheduler.droppedGameNs / 1e6);
+    }
+
+    // busy CPU work for about ns nanoseconds
+    static void work(long ns) {
+        long end = System.nanoTime() + ns;
+        while (System.nanoTime() < end) {
+            Bench.sink = null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+
+// Converts generated JSON maps to the binary MapFile format and compares file
+// size and load time. A MapFile load only reads the directory, the chunks are
+// decoded when the game first touches them: "first screen" decodes what a
+// 1200x800 view needs, "all chunks" forces every chunk to be decoded.
+//   java -cp out:bin:lib/gson.jar MapFileBenchmark
+public class MapFileBenchmark {
+    public static void main(String[] args) throws IOException {
+        int[] tileCounts = { 10_000, 1_000_000, 10_000_000 };
+        if (args.length > 0) {
+            tileCounts = HotPathBenchmarks.parseInts(args[0]);
+        }
+        TileVariantRegistry registry = new TileVariantRegistry();
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 1; i <= MapLoadBenchmark.VARIANTS; i++) {
+            registry.register("grass", i, image);
+        }
+
+        System.out.println("tiles      JSON MB  binary MB  JSON load ms  binary load ms  first screen ms  all chunks ms");
+        for (int tileCount : tileCounts) {
+            File json = File.createTempFile("map" + tileCount, ".json");
+            File binary = File.createTempFile("map" + tileCount, MapFile.EXTENSION);
+            json.deleteOnExit();
+            binary.deleteOnExit();
+            MapLoadBenchmark.writeMap(json, tileCount);
+            MapFile.Converter converter = new MapFile.Converter();
+            try (BufferedReader reader = new BufferedReader(new FileReader(json), 1 << 16)) {
+                Maploader.streamMap(reader, converter);
+            }
+            MapFile.write(binary.toPath(), converter.tileSize, converter.grid, converter.registry);
+            converter = null;
+
+            long start = System.nanoTime();
+            TileMap fromJson = new TileMap(registry, null);
+            try (BufferedReader reader = new BufferedReader(new FileReader(json), 1 << 16)) {
+                Maploader.streamMap(reader, fromJson);
+            }
+            double jsonMs = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            TileMap fromBinary = new TileMap(registry, null);
+            MapFile mapFile = MapFile.load(binary.toPath(), fromBinary);
+            double loadMs = (System.nanoTime() - start) / 1e6;
+
+            // a screen full of tiles at the top left corner of the map
+            start = System.nanoTime();
+            for (int gridY = 0; gridY < 800 / 32; gridY++) {
+                for (int gridX = 0; gridX < 1200 / 32; gridX++) {
+                    fromBinary.tileAt(gridX, gridY);
+                }
+            }
+            double firstScreenMs = (System.nanoTime() - start) / 1e6;
+            int decodedForScreen = mapFile.chunksDecoded.get();
+
+            start = System.nanoTime();
+            fromBinary.grid.forEachChunk(chunk -> {
+            });
+            double allMs = (System.nanoTime() - start) / 1e6;
+
+            checkSame(fromJson, fromBinary, tileCount);
+            System.out.printf("%-10d %7.1f %10.2f %13.0f %15.1f %16.2f %14.0f   (%d of %d chunks for the screen)%n",
+                    tileCount, json.length() / 1048576.0, Files.size(binary.toPath()) / 1048576.0, jsonMs, loadMs,
+                    firstScreenMs, allMs, decodedForScreen, mapFile.chunkCount);
+            json.delete();
+            binary.delete();
+        }
+    }
+
+    static void checkSame(TileMap expected, TileMap actual, int tileCount) {
+        int side = (int) Math.ceil(Math.sqrt(tileCount));
+        if (expected.tilesCount() != actual.tilesCount()) {
+            throw new RuntimeException("Tile count differs: " + expected.tilesCount() + " " + actual.tilesCount());
+        }
+        for (int gridY = -1; gridY <= side; gridY++) {
+            for (int gridX = -1; gridX <= side; gridX++) {
+                if (expected.tileAt(gridX, gridY) != actual.tileAt(gridX, gridY)) {
+                    throw new RuntimeException("Tile differs at " + gridX + ", " + gridY);
+                }
+            }
+        }
+    }
+}
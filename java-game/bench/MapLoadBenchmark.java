@@ -0,0 +1,116 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.awt.image.BufferedImage;
+import java.lang.ref.Reference;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+// Loads generated maps of 10k, 1M and 10M tiles from a JSON file, once through
+// Gson into MapData + TileMap.loadMapData and once through Maploader.streamMap,
+// and reports the load time, the heap peak during the load and what is still
+// on the heap afterwards. Run with the heap you would give the game, e.g.
+//   java -Xmx1g -cp out:bin:lib/gson.jar MapLoadBenchmark
+public class MapLoadBenchmark {
+    static final int TILE_SIZE = 32;
+    static final int VARIANTS = 41;
+
+    public static void main(String[] args) throws IOException {
+        int[] tileCounts = { 10_000, 1_000_000, 10_000_000 };
+        if (args.length > 0) {
+            tileCounts = HotPathBenchmarks.parseInts(args[0]);
+        }
+        TileVariantRegistry registry = new TileVariantRegistry();
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 1; i <= VARIANTS; i++) {
+            registry.register("grass", i, image);
+        }
+
+        System.out.println("tiles      file MB  loader     load ms  peak heap MB  retained MB");
+        for (int tileCount : tileCounts) {
+            File file = File.createTempFile("map" + tileCount, ".json");
+            file.deleteOnExit();
+            writeMap(file, tileCount);
+            double fileMb = file.length() / (1024.0 * 1024);
+
+            for (boolean streaming : new boolean[] { false, true }) {
+                // keep the map reachable until the retained heap has been measured
+                Object[] loaded = new Object[2];
+                long before = usedAfterGc();
+                resetPeaks();
+                long start = System.nanoTime();
+                try (BufferedReader reader = new BufferedReader(new FileReader(file), 1 << 16)) {
+                    if (streaming) {
+                        TileMap tileMap = new TileMap(registry, null);
+                        Maploader.streamMap(reader, tileMap);
+                        loaded[0] = tileMap;
+                    } else {
+                        MapData mapData = Maploader.loadMap(reader);
+                        loaded[0] = mapData;
+                        loaded[1] = new TileMap(mapData, registry, null);
+                    }
+                } catch (OutOfMemoryError e) {
+                    System.out.printf("%-10d %7.0f  %-8s  out of memory%n", tileCount, fileMb,
+                            streaming ? "stream" : "gson");
+                    continue;
+                }
+                double ms = (System.nanoTime() - start) / 1e6;
+                long peak = peakUsed() - before;
+                long retained = usedAfterGc() - before;
+                System.out.printf("%-10d %7.0f  %-8s %8.0f %13.0f %12.0f%n", tileCount, fileMb,
+                        streaming ? "stream" : "gson", ms, peak / (1024.0 * 1024), retained / (1024.0 * 1024));
+                Reference.reachabilityFence(loaded);
+            }
+            file.delete();
+        }
+    }
+
+    // square of tiles, written the same way as map1.json
+    static void writeMap(File file, int tileCount) throws IOException {
+        int side = (int) Math.ceil(Math.sqrt(tileCount));
+        try (Writer out = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            out.write("{\n  \"tileSize\": " + TILE_SIZE + ",\n  \"tiles\": [\n");
+            for (int i = 0; i < tileCount; i++) {
+                out.write("    {\"type\": \"grass\", \"variant\": " + (1 + i % VARIANTS) + ", \"gridX\": " + i % side
+                        + ", \"gridY\": " + i / side + "}" + (i + 1 < tileCount ? ",\n" : "\n"));
+            }
+            out.write("  ]\n}\n");
+        }
+    }
+
+    static long usedAfterGc() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // sum of the peaks of every heap pool, a little above the real peak as the
+    // pools do not all peak at the same moment
+    static long peakUsed() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
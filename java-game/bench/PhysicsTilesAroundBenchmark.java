@@ -0,0 +1,40 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+// Calls updatePhysicsTilesAround for an entity walking over a flat floor with a
+// few walls, and checks that the broad-phase does not allocate anything.
+public class PhysicsTilesAroundBenchmark {
+    static final int TILE_SIZE = 32;
+
+    public static void main(String[] args) {
+        TileVariantRegistry registry = new TileVariantRegistry();
+        registry.register("ground", 0, new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB));
+        MapData mapData = new MapData();
+        mapData.tileSize = TILE_SIZE;
+        mapData.tiles = new ArrayList<>();
+        TileMap map = new TileMap(mapData, registry, null);
+        TileVariant ground = registry.get("ground", 0);
+        for (int x = 0; x < 1000; x++) {
+            map.setTile(x, 10, ground);
+            if (x % 7 == 0) {
+                map.setTile(x, 9, ground);
+                map.setTile(x, 8, ground);
+            }
+        }
+
+        PhysicsEntity entity = new PhysicsEntity(0, 9 * TILE_SIZE - 90, 30, 90);
+        PhysicsTilesAround around = new PhysicsTilesAround(entity, map, TILE_SIZE);
+        Runnable step = () -> {
+            entity.rect.xPos = (entity.rect.xPos + 3) % (999 * TILE_SIZE);
+            around.updatePhysicsTilesAround();
+        };
+
+        System.out.println("debug tiles   ns/call   bytes/call");
+        for (boolean debug : new boolean[] { false, true }) {
+            around.collectDebugTiles = debug;
+            double ns = Bench.nsPerOp(step, 200_000, 1_000_000);
+            double bytes = Bench.bytesPerOp(step, 10_000, 1_000_000);
+            System.out.printf("%-12s %8.1f %12.3f%n", debug ? "on" : "off", ns, bytes);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Random;
+
+// Steps 10,000 bodies at 60 Hz over a map of floors and pillars with different
+// thread counts. Every run must end in the same state (same checksum) and a step
+// has to stay well below the 16.6 ms frame budget.
+public class PhysicsWorldBenchmark {
+    static final int TILE_SIZE = 32;
+    static final int BODIES = 10_000;
+    static final int STEPS = 600; // 10 simulated seconds
+    static final double DT = 1.0 / 60;
+
+    public static void main(String[] args) {
+        TileMap map = buildMap();
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("available cores: " + cores);
+        System.out.println("threads   ms/step   checksum");
+        for (int threads : new int[] { 1, 2, 4, 8 }) {
+            PhysicsWorld world = new PhysicsWorld(map, 600, 600, threads);
+            spawn(world);
+            for (int i = 0; i < STEPS / 2; i++) { // warmup
+                world.step(DT);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < STEPS; i++) {
+                world.step(DT);
+            }
+            double msPerStep = (System.nanoTime() - start) / 1e6 / STEPS;
+            System.out.printf("%-9d %7.3f   %016x%n", threads, msPerStep, checksum(world));
+            world.shutdown();
+        }
+    }
+
+    static TileMap buildMap() {
+        TileVariantRegistry registry = new TileVariantRegistry();
+        registry.register("ground", 0, new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB));
+        MapData mapData = new MapData();
+        mapData.tileSize = TILE_SIZE;
+        mapData.tiles = new ArrayList<>();
+        TileMap map = new TileMap(mapData, registry, null);
+        TileVariant ground = registry.get("ground", 0);
+        // 20 floors of 2000 tiles with a pillar every 25 tiles
+        for (int floor = 0; floor < 20; floor++) {
+            int y = floor * 12 + 10;
+            for (int x = 0; x < 2000; x++) {
+                map.setTile(x, y, ground);
+                if (x % 25 == 0) {
+                    map.setTile(x, y - 1, ground);
+                    map.setTile(x, y - 2, ground);
+                }
+            }
+        }
+        return map;
+    }
+
+    static void spawn(PhysicsWorld world) {
+        Random random = new Random(42);
+        for (int i = 0; i < BODIES; i++) {
+            int floor = random.nextInt(20);
+            double x = TILE_SIZE + random.nextDouble() * 1990 * TILE_SIZE;
+            double y = (floor * 12 + 10) * TILE_SIZE - 200 - random.nextDouble() * 100;
+            world.add(x, y, 20, 30, random.nextBoolean() ? 60 : -60, 0);
+        }
+    }
+
+    static long checksum(PhysicsWorld world) {
+        long hash = 17;
+        for (int i = 0; i < world.count; i++) {
+            hash = hash * 31 + Double.doubleToLongBits(world.xPos[i]);
+            hash = hash * 31 + Double.doubleToLongBits(world.yPos[i]);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,70 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+// One frame of the world drawn the way App does it for each --pixel-scale:
+// background, tiles and 50 animated sprites into a framebuffer of 1200x800 / scale,
+// through a 1/scale transform, then scaled up to the 1200x800 window
+// (TYPE_INT_RGB, like a window's back buffer) in one nearest neighbour draw.
+// Scale 1 draws straight to the window. Every scale shows the same 1200x800 of
+// the world, the camera stands over the hilly map of ScrollBlitBenchmark. One
+// operation is one frame.
+//   java -cp out:bin:lib/gson.jar PixelScaleBenchmark
+public class PixelScaleBenchmark {
+    static final int WINDOW_WIDTH = 1200;
+    static final int WINDOW_HEIGHT = 800;
+    static final int SPRITES = 50;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        BufferedImage window = new BufferedImage(WINDOW_WIDTH, WINDOW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D windowGraphics = window.createGraphics();
+        windowGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        GameImage loader = new GameImage();
+        TileVariantRegistry registry = new TileVariantRegistry();
+        registry.register("ground", 0, GameImage.toCompatible(loader.loadImage("tiles/ground/0.png")));
+        registry.register("stone", 0, GameImage.toCompatible(loader.loadImage("tiles/stone/0.png")));
+        Animation run = new Animation("player/run", 15, 16, 32, 32, true);
+        PhysicsEntity target = new PhysicsEntity(400 * 32, ScrollBlitBenchmark.height(400) * 32 - 90, 30, 90);
+        Camera camera = new Camera(target, WINDOW_WIDTH, WINDOW_HEIGHT, Game.UPDATE_STEP_DURATION);
+        TileMap map = new TileMap(ScrollBlitBenchmark.hills(600, 200), registry, camera);
+
+        for (int pixelScale = 1; pixelScale <= 4; pixelScale++) {
+            int scale = pixelScale;
+            int viewWidth = WINDOW_WIDTH / scale, viewHeight = WINDOW_HEIGHT / scale;
+            Background background = new Background(WINDOW_WIDTH, WINDOW_HEIGHT, scale);
+            map.setPixelScale(scale);
+            BufferedImage framebuffer = scale == 1 ? null
+                    : GameImage.createCompatibleImage(viewWidth, viewHeight, Transparency.OPAQUE);
+            Graphics2D world = framebuffer == null ? windowGraphics : worldGraphics(framebuffer, scale);
+            int[] frame = { 0 };
+            Bench.measure("frame at pixel scale", "scale=" + scale + ", " + viewWidth + "x" + viewHeight, () -> {
+                int offsetX = (int) camera.cameraOffsetX, offsetY = (int) camera.cameraOffsetY;
+                background.render(world);
+                map.render(world, camera.cameraOffsetX, camera.cameraOffsetY);
+                for (int i = 0; i < SPRITES; i++) {
+                    int x = (int) target.rect.xPos - WINDOW_WIDTH / 2 + (i * 97) % WINDOW_WIDTH;
+                    int y = (int) target.rect.yPos - 40 + (i * 13) % 80;
+                    BufferedImage sprite = run.scaledFrame((frame[0] + i) % run.framesCount, 2, i % 2 == 1);
+                    world.drawImage(sprite, x + offsetX, y + offsetY, null);
+                }
+                frame[0]++;
+                if (framebuffer != null) {
+                    windowGraphics.drawImage(framebuffer, 0, 0, viewWidth * scale, viewHeight * scale, null);
+                }
+            });
+        }
+        windowGraphics.dispose();
+        Bench.printSummary();
+    }
+
+    // draws window coordinates into the framebuffer, like App's framebufferGraphics
+    static Graphics2D worldGraphics(BufferedImage framebuffer, int scale) {
+        Graphics2D g = framebuffer.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.scale(1.0 / scale, 1.0 / scale);
+        return g;
+    }
+}
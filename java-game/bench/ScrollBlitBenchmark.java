@@ -0,0 +1,97 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+// Background and tiles of a 1200x800 frame drawn from scratch (Background.render
+// + TileMap.render, what App does by default) against ScrollBlitRenderer, which
+// shifts the previous frame and only draws the strips the camera uncovered. The
+// camera lerps after a target walking over a hilly map (a few px per frame, with
+// pauses), or stands still. One operation is one frame, the scroll-blit rows also
+// print the pixels redrawn per frame.
+//   java -cp out:bin:lib/gson.jar ScrollBlitBenchmark
+public class ScrollBlitBenchmark {
+    static final int FRAME_WIDTH = 1200;
+    static final int FRAME_HEIGHT = 800;
+    static final int PATH_FRAMES = 4096;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        BufferedImage frame = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = frame.createGraphics();
+        GameImage loader = new GameImage();
+        TileVariantRegistry registry = new TileVariantRegistry();
+        registry.register("ground", 0, GameImage.toCompatible(loader.loadImage("tiles/ground/0.png")));
+        registry.register("stone", 0, GameImage.toCompatible(loader.loadImage("tiles/stone/0.png")));
+        PhysicsEntity target = new PhysicsEntity(0, 0, 30, 90);
+        Camera camera = new Camera(target, FRAME_WIDTH, FRAME_HEIGHT, Game.UPDATE_STEP_DURATION);
+        TileMap map = new TileMap(hills(600, 200), registry, camera);
+        Background background = new Background(FRAME_WIDTH, FRAME_HEIGHT);
+
+        double[][] panning = cameraPath(camera, target, true);
+        double[][] still = cameraPath(camera, target, false);
+        for (boolean chunkCache : new boolean[] { false, true }) {
+            map.useChunkCache = chunkCache;
+            String cache = chunkCache ? "chunk cache" : "per tile";
+            for (double[][] path : new double[][][] { panning, still }) {
+                String params = (path == panning ? "panning, " : "still, ") + cache;
+                int[] next = { 0 };
+                Bench.measure("redraw everything", params, () -> {
+                    int i = next[0]++ % PATH_FRAMES;
+                    background.render(g);
+                    map.render(g, path[0][i], path[1][i]);
+                });
+                ScrollBlitRenderer renderer = new ScrollBlitRenderer(FRAME_WIDTH, FRAME_HEIGHT);
+                Bench.measure("scroll-blit", params, () -> {
+                    int i = next[0]++ % PATH_FRAMES;
+                    renderer.render(g, background, map, path[0][i], path[1][i]);
+                });
+                System.out.println("  " + renderer.stats());
+            }
+        }
+        g.dispose();
+        Bench.printSummary();
+    }
+
+    // camera offsets of PATH_FRAMES frames, the target walks right at ~2.5 px per
+    // frame and stops for a second every 4 seconds, up and down with the hills
+    static double[][] cameraPath(Camera camera, PhysicsEntity target, boolean moving) {
+        double[][] path = new double[2][PATH_FRAMES];
+        target.rect.xPos = 400 * 32;
+        target.rect.yPos = 80 * 32;
+        for (int i = 0; i < 120; i++) {
+            camera.updateCameraOffset(); // settle
+        }
+        for (int i = 0; i < PATH_FRAMES; i++) {
+            if (moving && i % 360 < 270) {
+                target.rect.xPos += (i / 360) % 2 == 0 ? 2.5 : -2.5;
+                target.rect.yPos = height(target.rect.xPos / 32) * 32 - 90;
+            }
+            camera.updateCameraOffset();
+            path[0][i] = camera.cameraOffsetX;
+            path[1][i] = camera.cameraOffsetY;
+        }
+        return path;
+    }
+
+    static int height(double gridX) {
+        return 80 + (int) (12 * Math.sin(gridX / 23) + 5 * Math.sin(gridX / 7));
+    }
+
+    // ground on the surface, stone below it, sky above
+    static MapData hills(int width, int depth) {
+        MapData map = new MapData();
+        map.tileSize = 32;
+        map.tiles = new ArrayList<>();
+        for (int x = 0; x < width; x++) {
+            for (int y = height(x); y < depth; y++) {
+                TileData tile = new TileData();
+                tile.type = y == height(x) ? "ground" : "stone";
+                tile.variant = 0;
+                tile.gridX = x;
+                tile.gridY = y;
+                map.tiles.add(tile);
+            }
+        }
+        return map;
+    }
+}
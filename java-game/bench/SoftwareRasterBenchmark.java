@@ -0,0 +1,79 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+// Java2D drawImage against SoftwareRasterizer for one 1200x800 frame: the
+// background plus 1k, 10k or 100k visible 32x32 sprites (frames of the run
+// animation, translucent around the character, half of them mirrored), and
+// the tiles of ScrollBlitBenchmark's hilly map drawn one by one (opaque). The
+// rasterizer runs on one band (the calling thread only) and on its default
+// number of bands on the common fork-join pool. One operation is one frame.
+//   java -cp out:bin:lib/gson.jar SoftwareRasterBenchmark
+public class SoftwareRasterBenchmark {
+    static final int FRAME_WIDTH = 1200;
+    static final int FRAME_HEIGHT = 800;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        BufferedImage frame = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = frame.createGraphics();
+        Background background = new Background(FRAME_WIDTH, FRAME_HEIGHT);
+        Animation run = new Animation("player/run", 15, 16, 32, 32, true);
+        SoftwareRasterizer oneBand = new SoftwareRasterizer(FRAME_WIDTH, FRAME_HEIGHT);
+        oneBand.bands = 1;
+        SoftwareRasterizer parallel = new SoftwareRasterizer(FRAME_WIDTH, FRAME_HEIGHT);
+        String bands = "bands=" + parallel.bands + " on " + parallel.pool.getParallelism() + " threads";
+        System.out.println("available processors " + Runtime.getRuntime().availableProcessors());
+
+        for (int count : new int[] { 1_000, 10_000, 100_000 }) {
+            BufferedImage[] images = new BufferedImage[count];
+            int[] x = new int[count], y = new int[count];
+            for (int i = 0; i < count; i++) {
+                images[i] = run.scaledFrame(i % run.framesCount, 0, i % 2 == 1);
+                x[i] = (int) ((i * 0.618034 % 1) * (FRAME_WIDTH - 32));
+                y[i] = (i * 37) % (FRAME_HEIGHT - 32);
+            }
+            String params = "sprites=" + count;
+            Bench.measure("java2d drawImage", params, () -> {
+                background.render(g);
+                for (int i = 0; i < count; i++) {
+                    g.drawImage(images[i], x[i], y[i], null);
+                }
+            });
+            for (SoftwareRasterizer raster : new SoftwareRasterizer[] { oneBand, parallel }) {
+                Bench.measure("software raster", params + ", " + (raster == oneBand ? "bands=1" : bands), () -> {
+                    raster.begin();
+                    background.render(raster);
+                    for (int i = 0; i < count; i++) {
+                        raster.drawImage(images[i], x[i], y[i]);
+                    }
+                    raster.finish();
+                });
+            }
+        }
+
+        GameImage loader = new GameImage();
+        TileVariantRegistry registry = new TileVariantRegistry();
+        registry.register("ground", 0, GameImage.toCompatible(loader.loadImage("tiles/ground/0.png")));
+        registry.register("stone", 0, GameImage.toCompatible(loader.loadImage("tiles/stone/0.png")));
+        PhysicsEntity target = new PhysicsEntity(400 * 32, ScrollBlitBenchmark.height(400) * 32 - 90, 30, 90);
+        Camera camera = new Camera(target, FRAME_WIDTH, FRAME_HEIGHT, Game.UPDATE_STEP_DURATION);
+        TileMap map = new TileMap(ScrollBlitBenchmark.hills(600, 200), registry, camera);
+        map.useChunkCache = false;
+        String params = "hills, per tile";
+        Bench.measure("java2d drawImage", params, () -> {
+            background.render(g);
+            map.render(g, camera.cameraOffsetX, camera.cameraOffsetY);
+        });
+        System.out.println("  " + map.drawCallsLastFrame + " tiles");
+        for (SoftwareRasterizer raster : new SoftwareRasterizer[] { oneBand, parallel }) {
+            Bench.measure("software raster", params + ", " + (raster == oneBand ? "bands=1" : bands), () -> {
+                raster.begin();
+                background.render(raster);
+                map.render(raster, camera.cameraOffsetX, camera.cameraOffsetY);
+                raster.finish();
+            });
+        }
+        g.dispose();
+        Bench.printSummary();
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.Random;
+
+// Broad-phase cost of body vs body collision as the body count grows. Bodies are
+// spread over the PhysicsWorldBenchmark map and stepped for real, so the numbers
+// include the incremental rehash of the bodies that changed cell.
+public class SpatialHashBenchmark {
+    static final int STEPS = 300;
+    static final double DT = 1.0 / 60;
+
+    public static void main(String[] args) {
+        TileMap map = PhysicsWorldBenchmark.buildMap();
+        System.out.println("bodies   hash ms/step   rehashed/step   pairs tested/step   overlaps/step   naive pairs");
+        for (int bodies : new int[] { 1_000, 10_000, 20_000, 50_000 }) {
+            PhysicsWorld world = new PhysicsWorld(map, 600, 600, 1);
+            world.bodyCollisions = false;
+            Random random = new Random(7);
+            for (int i = 0; i < bodies; i++) {
+                int floor = random.nextInt(20);
+                double x = 32 + random.nextDouble() * 1990 * 32;
+                double y = (floor * 12 + 10) * 32 - 30;
+                world.add(x, y, 20, 30, random.nextBoolean() ? 60 : -60, 0);
+            }
+            SpatialHash hash = new SpatialHash(map.tileSize, world.largestBodySize);
+            long hashNs = 0, rehashed = 0, tested = 0, overlapping = 0;
+            for (int step = 0; step < STEPS * 2; step++) {
+                world.step(DT);
+                long start = System.nanoTime();
+                hash.update(world);
+                hash.forEachOverlappingPair(world, world);
+                if (step >= STEPS) { // first half is warmup
+                    hashNs += System.nanoTime() - start;
+                    rehashed += hash.bodiesRehashed;
+                    tested += hash.pairsTested;
+                    overlapping += hash.pairsOverlapping;
+                }
+            }
+            System.out.printf("%-8d %13.3f %15d %19d %15d %13d%n", bodies, hashNs / 1e6 / STEPS, rehashed / STEPS,
+                    tested / STEPS, overlapping / STEPS, (long) bodies * (bodies - 1) / 2);
+            world.shutdown();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+// Draw throughput of the player sprite and the background into a 1200x800 frame
+// (TYPE_INT_RGB, like a window's back buffer) for the three ways an image can
+// reach the screen: as ImageIO decoded it and scaled on every draw, converted
+// to the compatible format and scaled on every draw, or converted and scaled
+// once so the draw is a plain blit. One operation draws 100 sprites (half of
+// them mirrored) or one background. The last sprite case takes the frames from
+// Animation.scaledFrame, 100 entities sharing one animation at different frames,
+// two scales and both facings, so it includes the cache lookups.
+//   java -cp out:bin:lib/gson.jar SpriteRenderBenchmark
+public class SpriteRenderBenchmark {
+    static final int SPRITES = 100;
+    static final int SCALE = 2; // Player.imageScalingFactor
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        BufferedImage frame = new BufferedImage(1200, 800, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = frame.createGraphics();
+
+        BufferedImage decoded = ImageIO.read(SpriteRenderBenchmark.class.getResource("/player/idle/1.png"));
+        BufferedImage compatible = GameImage.toCompatible(decoded);
+        // the size Player draws it at: sprite + sprite * imageScalingFactor
+        int w = decoded.getWidth() * (1 + SCALE), h = decoded.getHeight() * (1 + SCALE);
+        BufferedImage prescaled = GameImage.scaledCopy(compatible, w, h, false);
+        BufferedImage prescaledMirrored = GameImage.scaledCopy(compatible, w, h, true);
+        System.out.println("decoded image type " + decoded.getType() + ", compatible type " + compatible.getType());
+
+        Bench.measure("sprites decoded, scaled per draw", "sprites=" + SPRITES,
+                () -> drawScaled(g, decoded, w, h));
+        Bench.measure("sprites compatible, scaled per draw", "sprites=" + SPRITES,
+                () -> drawScaled(g, compatible, w, h));
+        Bench.measure("sprites pre-scaled, pre-mirrored", "sprites=" + SPRITES, () -> {
+            for (int i = 0; i < SPRITES; i++) {
+                int x = (i * 97) % 1100, y = (i * 61) % 700;
+                g.drawImage(i % 2 == 0 ? prescaled : prescaledMirrored, x, y, null);
+            }
+        });
+        Animation run = new Animation("player/run", 15, 16, 32, 32, true);
+        Bench.measure("sprites from the Animation frame cache", "sprites=" + SPRITES, () -> {
+            for (int i = 0; i < SPRITES; i++) {
+                int x = (i * 97) % 1100, y = (i * 61) % 700;
+                BufferedImage sprite = run.scaledFrame(i % run.framesCount, i % 3 == 0 ? SCALE + 1 : SCALE, i % 2 == 1);
+                g.drawImage(sprite, x, y, null);
+            }
+        });
+        System.out.printf("frame cache: %d images built, %d cached (at most %d), %d hits%n", run.scaledImagesBuilt,
+                run.scaledImagesCached(), run.frames.length * 2 * Animation.SCALES_PER_FRAME, run.scaledImageHits);
+
+        BufferedImage background = ImageIO.read(SpriteRenderBenchmark.class.getResource("/" + Background.IMAGE_PATH));
+        BufferedImage backgroundCompatible = GameImage.toCompatible(background);
+        BufferedImage backgroundPrescaled = GameImage.scaledCopy(backgroundCompatible, 1200, 800, false);
+        Bench.measure("background decoded, scaled per draw", "", () -> g.drawImage(background, 0, 0, 1200, 800, null));
+        Bench.measure("background compatible, scaled per draw", "",
+                () -> g.drawImage(backgroundCompatible, 0, 0, 1200, 800, null));
+        Bench.measure("background pre-scaled", "", () -> g.drawImage(backgroundPrescaled, 0, 0, null));
+        g.dispose();
+        Bench.printSummary();
+    }
+
+    // what Player did before: scale on every draw, negative width to mirror
+    static void drawScaled(Graphics2D g, BufferedImage image, int w, int h) {
+        for (int i = 0; i < SPRITES; i++) {
+            int x = (i * 97) % 1100, y = (i * 61) % 700;
+            if (i % 2 == 0) {
+                g.drawImage(image, x, y, w, h, null);
+            } else {
+                g.drawImage(image, x + w, y, -w, h, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+import java.util.List;
+
+// Time from a cold JVM to a constructed Game (all images decoded, map loaded,
+// player built) plus the background, which is what the window waits for.
+// Only the first run in a JVM means anything, so run it a few times:
+//   for i in 1 2 3 4 5; do java -cp out:bin:lib/gson.jar StartupBenchmark; done
+public class StartupBenchmark {
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        long start = System.nanoTime();
+        GameImage.preload(List.of(Background.IMAGE_PATH)); // as App does
+        Game game = new Game("map1.json", 1200, 800);
+        Background background = new Background(1200, 800);
+        double ms = (System.nanoTime() - start) / 1e6;
+        System.out.printf("startup: %.0f ms (%d tiles, %d images decoded, %d atlas pages)%n", ms,
+                game.tileMap.tilesCount(), GameImage.decodes.get(), game.atlas.pages.size());
+        Bench.sink = background;
+        game.physicsWorld.shutdown();
+    }
+}
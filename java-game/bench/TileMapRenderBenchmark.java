@@ -0,0 +1,66 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+// Renders square maps of increasing size into an offscreen 1200x800 frame.
+// With viewport culling the time per frame should stay flat as the map grows,
+// and blitting baked chunk images should beat drawing every tile on its own.
+public class TileMapRenderBenchmark {
+    static final int FRAME_WIDTH = 1200;
+    static final int FRAME_HEIGHT = 800;
+    static final int TILE_SIZE = 32;
+
+    public static void main(String[] args) {
+        int[] tileCounts = { 1_000, 10_000, 100_000, 1_000_000 };
+        TileVariantRegistry registry = new TileVariantRegistry();
+        registry.register("grass", 1, solidImage(TILE_SIZE, new Color(70, 160, 60)));
+
+        BufferedImage frame = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = frame.createGraphics();
+
+        System.out.println("tiles       per-tile ns/frame  draws   baked ns/frame  draws");
+        for (int tileCount : tileCounts) {
+            MapData map = squareMap(tileCount);
+            int side = (int) Math.ceil(Math.sqrt(tileCount));
+            // camera in the middle of the map so the whole screen is covered by tiles
+            PhysicsEntity target = new PhysicsEntity(side * TILE_SIZE / 2.0, side * TILE_SIZE / 2.0, 30, 90);
+            Camera camera = new Camera(target, FRAME_WIDTH, FRAME_HEIGHT, 1.0 / 60);
+            TileMap tileMap = new TileMap(map, registry, camera);
+
+            tileMap.useChunkCache = false;
+            double perTileNs = Bench.nsPerOp(() -> tileMap.render(g), 200, 500);
+            int perTileDraws = tileMap.drawCallsLastFrame;
+            tileMap.useChunkCache = true;
+            double bakedNs = Bench.nsPerOp(() -> tileMap.render(g), 200, 500);
+            System.out.printf("%-10d %17.0f %6d %16.0f %6d%n", tileCount, perTileNs, perTileDraws, bakedNs,
+                    tileMap.drawCallsLastFrame);
+        }
+        g.dispose();
+    }
+
+    static MapData squareMap(int tileCount) {
+        int side = (int) Math.ceil(Math.sqrt(tileCount));
+        MapData map = new MapData();
+        map.tileSize = TILE_SIZE;
+        map.tiles = new ArrayList<>(tileCount);
+        for (int i = 0; i < tileCount; i++) {
+            TileData tile = new TileData();
+            tile.type = "grass";
+            tile.variant = 1;
+            tile.gridX = i % side;
+            tile.gridY = i / side;
+            map.tiles.add(tile);
+        }
+        return map;
+    }
+
+    static BufferedImage solidImage(int size, Color color) {
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, size, size);
+        g.dispose();
+        return img;
+    }
+}
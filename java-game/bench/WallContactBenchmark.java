@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+
+// Player.update for players in the air against a wall, the case where the wall
+// hold, slide and climb checks look at the tiles around the player. Every
+// operation puts each player back next to one of a row of walls, half of them
+// low on the wall (holding) and half at the height where a climb starts.
+//   java -cp out:bin:lib/gson.jar WallContactBenchmark [--entities=1,100,1000]
+public class WallContactBenchmark {
+    static final int TILE = 32;
+    static final int WALL_TOP = 20, WALL_BOTTOM = 40; // grid rows of every wall, the floor is below them
+    static final int WALL_SPACING = 8; // grid columns between walls
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int[] entityCounts = { 1, 100, 1_000 };
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            switch (parts[0]) {
+                case "--entities" -> entityCounts = HotPathBenchmarks.parseInts(parts[1]);
+                default -> System.err.println("Unknown option ignored: " + arg);
+            }
+        }
+        int walls = 200;
+        MapData map = new MapData();
+        map.tileSize = TILE;
+        map.tiles = new ArrayList<>();
+        for (int wall = 0; wall < walls; wall++) {
+            for (int y = WALL_TOP; y <= WALL_BOTTOM; y++) {
+                map.tiles.add(tile(wall * WALL_SPACING + 4, y));
+            }
+        }
+        for (int x = 0; x < walls * WALL_SPACING; x++) {
+            map.tiles.add(tile(x, WALL_BOTTOM + 1));
+        }
+        Game game = new Game(map, 1200, 800);
+        int[] moving = { 1, 0 }; // pushing right, into the wall
+
+        for (int entities : entityCounts) {
+            Player[] players = new Player[entities];
+            for (int i = 0; i < entities; i++) {
+                players[i] = new Player(game, 0, 0, 30, 90);
+                players[i].physicsTilesAround = new PhysicsTilesAround(players[i], game.tileMap, TILE);
+            }
+            Bench.measure("Player.update against a wall", "entities=" + entities, () -> {
+                for (int i = 0; i < players.length; i++) {
+                    Player player = players[i];
+                    int wall = i % walls;
+                    player.rect.xPos = (wall * WALL_SPACING + 4) * TILE - player.rect.w - 1;
+                    // a climb starts when the top of the player is 16 to 32 px below the top of the wall
+                    player.rect.yPos = i % 2 == 0 ? WALL_TOP * TILE + 24 : (WALL_TOP + 6) * TILE;
+                    player.velocityY = 0;
+                    player.wallState = WallState.NONE;
+                    player.isClimbing = false;
+                    player.blockingInput = false;
+                    player.climbTimer = 0;
+                    player.facingRight = true;
+                    player.update(Game.UPDATE_STEP_DURATION, moving);
+                }
+            });
+        }
+        game.physicsWorld.shutdown();
+        Bench.printSummary();
+    }
+
+    static TileData tile(int x, int y) {
+        TileData tile = new TileData();
+        tile.type = "grass";
+        tile.variant = 2;
+        tile.gridX = x;
+        tile.gridY = y;
+        return tile;
+    }
+}
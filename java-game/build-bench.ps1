@@ -0,0 +1,31 @@
+# PowerShell script to compile and run the benchmarks in bench/
+# Usage: .\build-bench.ps1 [BenchmarkClass] [options]   (default HotPathBenchmarks)
+
+# Paths
+$projectRoot = Split-Path -Parent $MyInvocation.MyCommand.Path
+$outFolder = Join-Path $projectRoot "out"
+$gsonJar = Join-Path $projectRoot "lib\gson.jar"
+$binFolder = Join-Path $projectRoot "bin"
+
+$benchmark = "HotPathBenchmarks"
+if ($args.Count -gt 0) {
+    $benchmark = $args[0]
+    $args = $args[1..($args.Count)]
+}
+
+Push-Location $projectRoot
+
+# Compile the game and the benchmarks together, bench/ uses package-private classes
+Write-Host "Compiling src and bench..."
+$sources = (Get-ChildItem src\*.java, bench\*.java).FullName
+javac -cp $gsonJar -d $outFolder $sources
+if ($LASTEXITCODE -ne 0) {
+    Pop-Location
+    exit $LASTEXITCODE
+}
+
+# Run headless, images and map1.json are loaded from bin
+Write-Host "Running $benchmark..."
+java -Djava.awt.headless=true -cp "$outFolder;$binFolder;$gsonJar" $benchmark @args
+
+Pop-Location
@@ -0,0 +1,16 @@
+#!/bin/sh
+# Compiles and runs the benchmarks in bench/, the same as build-bench.ps1
+# Usage: ./build-bench.sh [BenchmarkClass] [options]   (default HotPathBenchmarks)
+set -e
+cd "$(dirname "$0")"
+
+benchmark=${1:-HotPathBenchmarks}
+[ $# -gt 0 ] && shift
+
+# Compile the game and the benchmarks together, bench/ uses package-private classes
+echo "Compiling src and bench..."
+javac -cp lib/gson.jar -d out src/*.java bench/*.java
+
+# Run headless, images and map1.json are loaded from bin
+echo "Running $benchmark..."
+java -Djava.awt.headless=true -cp out:bin:lib/gson.jar "$benchmark" "$@"
@@ -10,6 +10,16 @@ public class Animation {
     double frameDuration;
     int currentFrame = 0;
     RenderOffset animRenderOffset = new RenderOffset(0, 0, 0, 0);
+    // Frames already at their drawn size, built on first use. Every (frame, mirrored)
+    // pair keeps the last SCALES_PER_FRAME scales it was asked for, so an animation
+    // never holds more than frames * 2 * SCALES_PER_FRAME images, however many
+    // entities share it. Slot of an image: ((frame * 2 + mirrored) * SCALES_PER_FRAME + way)
+    static final int SCALES_PER_FRAME = 4;
+    private BufferedImage[] scaledImages;
+    private double[] scaledImageScales;
+    private long[] scaledImageLastUse;
+    private long scaledImageUses;
+    int scaledImagesBuilt, scaledImageHits;
 
     // For loadin animation from a group of sprites/ from folder
     public Animation(String path, int framesCount, int animFrequency, int spriteW, int spriteH, boolean loop) {
@@ -45,6 +55,53 @@ public class Animation {
         animRenderOffset.h = h;
     }
 
+    // Frame at the size Player draws it for the given scaling factor
+    // (sprite + sprite * scale + animRenderOffset), mirrored or not, so drawing it
+    // is an unscaled blit. Built the first time, the least recently used scale of
+    // the frame is replaced when all its ways are taken. Game thread only.
+    public BufferedImage scaledFrame(int index, double imageScalingFactor, boolean mirrored) {
+        if (scaledImages == null) {
+            int slots = frames.length * 2 * SCALES_PER_FRAME;
+            scaledImages = new BufferedImage[slots];
+            scaledImageScales = new double[slots];
+            scaledImageLastUse = new long[slots];
+        }
+        int first = (index * 2 + (mirrored ? 1 : 0)) * SCALES_PER_FRAME;
+        int oldest = first;
+        scaledImageUses++;
+        for (int slot = first; slot < first + SCALES_PER_FRAME; slot++) {
+            if (scaledImages[slot] != null && scaledImageScales[slot] == imageScalingFactor) {
+                scaledImageLastUse[slot] = scaledImageUses;
+                scaledImageHits++;
+                return scaledImages[slot];
+            }
+            // an empty way is taken first, then the least recently used one
+            if (scaledImages[oldest] != null
+                    && (scaledImages[slot] == null || scaledImageLastUse[slot] < scaledImageLastUse[oldest])) {
+                oldest = slot;
+            }
+        }
+        BufferedImage frame = frames[index];
+        int w = frame.getWidth() + (int) (frame.getWidth() * imageScalingFactor) + animRenderOffset.w;
+        int h = frame.getHeight() + (int) (frame.getHeight() * imageScalingFactor) + animRenderOffset.h;
+        if (scaledImages[oldest] != null) {
+            scaledImages[oldest].flush();
+        }
+        scaledImages[oldest] = GameImage.scaledCopy(frame, w, h, mirrored);
+        scaledImageScales[oldest] = imageScalingFactor;
+        scaledImageLastUse[oldest] = scaledImageUses;
+        scaledImagesBuilt++;
+        return scaledImages[oldest];
+    }
+
+    public int scaledImagesCached() {
+        int cached = 0;
+        for (int slot = 0; scaledImages != null && slot < scaledImages.length; slot++) {
+            cached += scaledImages[slot] != null ? 1 : 0;
+        }
+        return cached;
+    }
+
     public BufferedImage[] loadAnimationFromSingleSprite(String path) {
         BufferedImage spriteSheet = new GameImage().loadImage(path);
         BufferedImage[] bufferedImageArray = new BufferedImage[framesCount];
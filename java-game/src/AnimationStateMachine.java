@@ -0,0 +1,133 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+// Animation states and the transitions between them for one kind of entity. It
+// is built once and shared by every entity of that kind, an entity only keeps
+// two primitive fields: the index of its state and the seconds spent in it
+// (see Player.animState and animTime).
+// Every update the transitions of the current state are tried in the order they
+// were added, then the ones added for ANY state. The first condition that holds
+// gives the next state, none keeps the current one. Entering a state starts its
+// animation from the first frame.
+public class AnimationStateMachine<E> {
+    static final int ANY = -1;
+
+    private final List<String> names = new ArrayList<>();
+    private Animation[] animations = new Animation[0];
+    // Transitions tried from each state: its own ones followed by the ANY ones,
+    // kept flat so nextState only walks one array
+    private int[][] targets = new int[0][];
+    @SuppressWarnings("unchecked")
+    private Predicate<E>[][] conditions = (Predicate<E>[][]) new Predicate<?>[0][];
+    private final List<Transition<E>> anyTransitions = new ArrayList<>();
+
+    // the animation may be null, frame() then returns null for that state
+    public int addState(String name, Animation animation) {
+        int state = names.size();
+        names.add(name);
+        animations = Arrays.copyOf(animations, state + 1);
+        animations[state] = animation;
+        targets = Arrays.copyOf(targets, state + 1);
+        conditions = Arrays.copyOf(conditions, state + 1);
+        targets[state] = new int[anyTransitions.size()];
+        conditions[state] = newConditions(anyTransitions.size());
+        for (int i = 0; i < anyTransitions.size(); i++) {
+            targets[state][i] = anyTransitions.get(i).to;
+            conditions[state][i] = anyTransitions.get(i).condition;
+        }
+        return state;
+    }
+
+    public void addTransition(int from, int to, Predicate<E> condition) {
+        if (from < ANY || from >= names.size() || to < 0 || to >= names.size()) {
+            throw new RuntimeException("Unknown animation state in transition " + from + " -> " + to);
+        }
+        if (from == ANY) {
+            anyTransitions.add(new Transition<>(to, condition));
+            for (int state = 0; state < names.size(); state++) {
+                insert(state, targets[state].length, to, condition);
+            }
+        } else {
+            // before the ANY transitions of the state
+            int own = targets[from].length - anyTransitions.size();
+            insert(from, own, to, condition);
+        }
+    }
+
+    public int state(String name) {
+        int state = names.indexOf(name);
+        if (state < 0) {
+            throw new RuntimeException("Unknown animation state: " + name);
+        }
+        return state;
+    }
+
+    public String name(int state) {
+        return names.get(state);
+    }
+
+    public Animation animation(int state) {
+        return animations[state];
+    }
+
+    public int stateCount() {
+        return names.size();
+    }
+
+    public int nextState(E entity, int state) {
+        Predicate<E>[] tried = conditions[state];
+        for (int i = 0; i < tried.length; i++) {
+            if (tried[i].test(entity)) {
+                return targets[state][i];
+            }
+        }
+        return state;
+    }
+
+    // Frame shown after time seconds in the state: looping animations wrap
+    // around, the others stay on their last frame once they got there
+    public int frameIndex(int state, double time) {
+        Animation animation = animations[state];
+        int frame = (int) (time / animation.frameDuration);
+        if (!animation.looping && frame >= animation.framesCount) {
+            return animation.framesCount;
+        }
+        return frame % (animation.framesCount + 1);
+    }
+
+    public BufferedImage frame(int state, double time) {
+        Animation animation = animations[state];
+        return animation == null ? null : animation.frames[frameIndex(state, time)];
+    }
+
+    private void insert(int state, int at, int to, Predicate<E> condition) {
+        int[] stateTargets = new int[targets[state].length + 1];
+        Predicate<E>[] stateConditions = newConditions(stateTargets.length);
+        System.arraycopy(targets[state], 0, stateTargets, 0, at);
+        System.arraycopy(conditions[state], 0, stateConditions, 0, at);
+        stateTargets[at] = to;
+        stateConditions[at] = condition;
+        System.arraycopy(targets[state], at, stateTargets, at + 1, targets[state].length - at);
+        System.arraycopy(conditions[state], at, stateConditions, at + 1, targets[state].length - at);
+        targets[state] = stateTargets;
+        conditions[state] = stateConditions;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Predicate<E>[] newConditions(int length) {
+        return (Predicate<E>[]) new Predicate<?>[length];
+    }
+
+    private static class Transition<E> {
+        final int to;
+        final Predicate<E> condition;
+
+        Transition(int to, Predicate<E> condition) {
+            this.to = to;
+            this.condition = condition;
+        }
+    }
+}
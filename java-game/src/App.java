@@ -1,20 +1,32 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
 import java.util.Map;
-import java.util.Random;
 import java.util.HashMap;
 
 //local imports
 
 class OnGridTile extends PhysicsEntity {
-    final TileVariant tileVariant;
+    TileVariant tileVariant;
     int gridX, gridY;
 
     public OnGridTile(TileVariant tileVariant, double x, double y, int w, int h) {
         super(x, y, w, h);
         this.tileVariant = tileVariant;
     }
+
+    // reuses this object for another grid cell instead of allocating a new one
+    public void place(TileVariant tileVariant, int gridX, int gridY, int tileSize) {
+        this.tileVariant = tileVariant;
+        this.gridX = gridX;
+        this.gridY = gridY;
+        rect.xPos = gridX * tileSize;
+        rect.yPos = gridY * tileSize;
+        rect.w = tileSize;
+        rect.h = tileSize;
+    }
 }
 
 class InputState {
@@ -50,116 +62,114 @@ public class App extends JFrame {
     // Class Constants
     private static final int FRAME_WIDTH = 1200;
     private static final int FRAME_HEIGHT = 800;
-    private static final int FPS = 60;
-
-    private static final long GAME_LOOP_FREQUENCY = 90;
-    private static final long LOOP_DURATION_NS = 1_000_000_000 / GAME_LOOP_FREQUENCY;
-    public long computedFrameDuration;
+    private static final Font VERSION_FONT = new Font("Arial", Font.BOLD, 20); // 24 is the font size
 
     public double deltaTime;
-    private static final double UPDATE_FREQUENCY = FPS;
-    private static final double UPDATE_STEP_DURATION = 1.0 / UPDATE_FREQUENCY;
-    public static int updateCounter;
+    private static final double UPDATE_STEP_DURATION = Game.UPDATE_STEP_DURATION;
 
-    private double frameStepAccumulator;
     private double interpolationFactor;
-
-    public final double ACCLN_DUE_TO_GRAVITY = 600; // px / second square
-    public final double TERMINAL_VELOCITY = 600;
-
-    // image variables
-    private final GameImage loader = new GameImage();
+    LoopScheduler scheduler;
+    private volatile boolean repaintPending; // passive rendering with uncapped frames only
 
     // instance variables
     private boolean running = true;
-    private long lastNs = System.nanoTime();
-    int framescount = 1;
+    private long lastNs;
 
-    InputState inputs = new InputState();
-    int[] moving = { 0, 0 };
+    GameOptions options;
     JPanel panel;
+    Canvas canvas; // only used with active rendering
+    BufferStrategy bufferStrategy;
 
-    // Entities
-    Player player, player2;
-    Camera camera;
+    Game game; // everything that is simulated
+    InputState inputs;
+    FrameMetrics metrics;
     Asset assets;
-    Animation playerIdle, playerWalk, playerRun, playerJumpStart, playerJumpFall, playerJumpTransition,
-            playerWallContact, playerWallJump, playerWallSlide, playerWallClimb;
-
-    // tiles Variables
-    TileVariantRegistry tileVariantRegistry = new TileVariantRegistry();
-    TileMap tileMap;
-    MapData map;
 
     // Background layers
     Background bg;
-    CloudVariantRegistry cloudVariantRegestry = new CloudVariantRegistry();
-    CloudManager cloudManager;
-    int CLOUD_COUNT = 30;
-    Random random = new Random();
-
-    public App() {
+    ScrollBlitRenderer scrollBlit; // only with --scroll-blit
+    // With --pixel-scale the world is drawn into this image at viewWidth x
+    // viewHeight, 1/pixelScale of the window, and scaled up to the window in one
+    // nearest neighbour draw. The view covers the same part of the world as
+    // without it: everything is still drawn in window coordinates, through a
+    // 1/pixelScale transform (or SoftwareRasterizer.scale), so positions, tiles
+    // and sprites shrink and every framebuffer pixel is filled once. The text on
+    // top is drawn at the window's resolution.
+    int pixelScale;
+    int viewWidth, viewHeight;
+    BufferedImage framebuffer; // null when pixelScale is 1 and there is no raster
+    Graphics2D framebufferGraphics; // in window coordinates
+    // only with --software-raster: background, tiles and sprites are copied into
+    // its image (the framebuffer) by hand, the rest is drawn on top with Java2D
+    SoftwareRasterizer raster;
+
+    public App(GameOptions options) {
+        this.options = options;
         setTitle("Game");
         setSize(FRAME_WIDTH, FRAME_HEIGHT);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        loadAll();
-        bg = new Background();
-        map = Maploader.loadMap("map1.json");
-
-        // tiles
-        // player
-        player = new Player(this, 300, 50, 30, 90);
-        // player2 = new Player(this, 300, 40, 30, 90);
-
-        // camera
-        camera = new Camera(player, FRAME_WIDTH, FRAME_HEIGHT, UPDATE_STEP_DURATION);
-        
-        //Clouds
-        cloudManager = new CloudManager(CLOUD_COUNT, camera, cloudVariantRegestry, FRAME_WIDTH, FRAME_HEIGHT);
-
-        tileMap = new TileMap(map, tileVariantRegistry, camera);
-        player.physicsTilesAround = new PhysicsTilesAround(player, tileMap, 32);
-        // player2.physicsTilesAround = new PhysicsTilesAround(player2, tileMap, 32);
-
-        // Add a custom drawing panel
-        this.panel = new JPanel() {
-            {
-                setFocusable(true);
-                requestFocusInWindow(); // important
-            }
+        GameImage.preload(java.util.List.of(Background.IMAGE_PATH)); // decodes while the game loads
+        pixelScale = options.pixelScale;
+        viewWidth = FRAME_WIDTH / pixelScale;
+        viewHeight = FRAME_HEIGHT / pixelScale;
+        if (options.softwareRaster) {
+            raster = new SoftwareRasterizer(viewWidth, viewHeight);
+            raster.scale = pixelScale;
+            framebuffer = raster.image;
+        } else if (pixelScale > 1) {
+            framebuffer = GameImage.createCompatibleImage(viewWidth, viewHeight, Transparency.OPAQUE);
+        }
+        if (framebuffer != null) {
+            framebufferGraphics = framebuffer.createGraphics();
+            framebufferGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            framebufferGraphics.scale(1.0 / pixelScale, 1.0 / pixelScale);
+        }
+        game = new Game(options.mapPath, FRAME_WIDTH, FRAME_HEIGHT);
+        if (game.chunkStreamer != null) {
+            game.chunkStreamer.configure(options.chunkRadius, options.chunkMemoryBudget);
+        }
+        game.tileMap.setPixelScale(pixelScale);
+        inputs = game.inputs;
+        bg = new Background(FRAME_WIDTH, FRAME_HEIGHT, pixelScale);
+        if (options.scrollBlit && !options.softwareRaster) {
+            scrollBlit = new ScrollBlitRenderer(viewWidth, viewHeight, pixelScale);
+        }
+        scheduler = new LoopScheduler(UPDATE_STEP_DURATION, frameNs(options.fps));
+        scheduler.sleepStrategy = options.sleepStrategy;
+        scheduler.maxCatchUp = options.maxCatchUp;
+        scheduler.timeDilation = options.timeDilation;
+        metrics = new FrameMetrics(scheduler.frameNs, options.metricsIntervalNs);
+        metrics.overlayVisible = options.metricsOverlay;
+        metrics.log = options.metricsLog;
+        if (options.metricsCsvPath != null) {
+            metrics.writeCsv(options.metricsCsvPath);
+        }
 
-            @Override
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g); // clear paper
-                bg.render(g);
-
-                //cloudManager.render(g);
-                // Tiles, other render for future
-                tileMap.render(g);
-
-                // Player render
-                if (player != null) {
-                    player.render(g);
-                    // player2.render(g);
+        if (options.activeRendering) {
+            // The game loop draws itself, Swing must not repaint on top of it
+            setIgnoreRepaint(true);
+            this.canvas = new Canvas();
+            canvas.setIgnoreRepaint(true);
+            canvas.setFocusable(true);
+            add(canvas);
+        } else {
+            // Add a custom drawing panel
+            this.panel = new JPanel() {
+                {
+                    setFocusable(true);
+                    requestFocusInWindow(); // important
                 }
-                Font font = new Font("Arial", Font.BOLD, 20); // 24 is the font size
-                g.setFont(font);
-                g.setColor(Color.BLACK);
-                g.drawString("Game Version: 1.0.1", 30, 30);
-                // font = new Font("Arial", Font.BOLD, 35);
-                // g.setFont(font);
-                // g.drawString("After Camera LERP (linear interpolation)", 150, 120);
-                // font = new Font("Arial", Font.BOLD, 22);
-                // g.setFont(font);
-                // g.drawString("-> Camera offset is calculated w.r.t CAMERA object,  which follows Player", 150, 170);
-                // g.drawString("-> More the distance between player and camera, More the camera speed", 150, 200);
-                // g.drawString("-> When camera reaches near player its speed decreases making smooth camera movement", 150, 230);
-
-
-                camera.render(g);
-            }
-        };
-        add(panel);
+
+                @Override
+                protected void paintComponent(Graphics g) {
+                    super.paintComponent(g); // clear paper
+                    renderFrame(g);
+                    repaintPending = false;
+                }
+            };
+            add(panel);
+        }
 
         // Keyboard Inputs Handeling
         KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(e -> {
@@ -171,16 +181,20 @@ public class App extends JFrame {
                 case KeyEvent.VK_SHIFT -> inputs.isSprinting = pressed;
                 case KeyEvent.VK_W -> {
                     if (!inputs.jumpPressed && pressed) {
-                        player.jumpTriggered = true;
-                        // player2.jumpTriggered = true;
+                        game.triggerJump();
                     }
                     inputs.jumpPressed = pressed;
                 }
                 case KeyEvent.VK_S -> inputs.movingDown = pressed;
+                case KeyEvent.VK_F3 -> {
+                    if (pressed) {
+                        metrics.overlayVisible = !metrics.overlayVisible;
+                    }
+                }
             }
             return false;
         });
-        addMouseListener(new MouseAdapter() {
+        MouseAdapter mouseInputs = new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
                 if (SwingUtilities.isRightMouseButton(e)) {
@@ -198,7 +212,8 @@ public class App extends JFrame {
                     inputs.movingLeft = false;
                 }
             };
-        });
+        };
+        addMouseListener(mouseInputs);
         addWindowFocusListener(new WindowAdapter() {
             @Override
             public void windowLostFocus(WindowEvent e) {
@@ -215,154 +230,166 @@ public class App extends JFrame {
         assets = new Asset();
 
         setVisible(true);
+        if (options.activeRendering) {
+            // the canvas is a heavyweight component, mouse events do not reach the frame
+            canvas.addMouseListener(mouseInputs);
+            // triple buffering, page flipping when the hardware supports it
+            canvas.createBufferStrategy(3);
+            bufferStrategy = canvas.getBufferStrategy();
+            canvas.requestFocusInWindow();
+        }
 
         Thread gameThread = new Thread(() -> run(running));
         gameThread.start();
     }
 
-    public void loadTileAssets() {
-        // Misellaneous tiles
-        tileVariantRegistry.register("ground", 0, loader.loadImage("tiles/ground/0.png"));
-        tileVariantRegistry.register("stone", 0, loader.loadImage("tiles/stone/0.png"));
-
-        // Grass Tiles
-        for (int i = 1; i <= 41; i++) {
-            tileVariantRegistry.register("grass", i, loader.loadImage("tiles/grass/" + i + ".png"));
-        }
-        // Cloud variants
-        for (int i = 1; i <= 5; i++) {
-            cloudVariantRegestry.register(i, loader.loadImage("clouds/" + i + ".png"));
-        }
-    }
-
-    public void loadAll() {
-        // loading tiles variants
-        loadTileAssets();
-
-        // frames count is one less for now, later i will change. This is because
-        // loadimages has (i+1) instead of i as tileset images starts from 1.png
-        playerIdle = new Animation("player/idle", 9, 10, 32, 32, true);
-        playerIdle.setAnimRenderOffset(0, 0, 0, 0);
-
-        playerWalk = new Animation("player/walk", 11, 12, 32, 32, true);
-        playerWalk.setAnimRenderOffset(0, 0, 0, 0);
-
-        playerRun = new Animation("player/run", 15, 16, 32, 32, true);
-        playerRun.setAnimRenderOffset(0, 0, 0, 0);
-
-        playerJumpStart = new Animation("player/jumpStart", 2, 10, 32, 32, true);
-        playerJumpFall = new Animation("player/jumpFall", 2, 10, 32, 32, true);
-        playerJumpTransition = new Animation("player/jumpTransition", 2, 4, 32, 32, false);
-        playerWallContact = new Animation("player/wallContact", 2, 8, 32, 32, false);
-        playerWallContact.setAnimRenderOffset(-3, 0, 0, 0);
-        playerWallSlide = new Animation("player/wallSlide", 2, 10, 32, 32, true);
-        playerWallSlide.setAnimRenderOffset(-3, 0, 0, 0);
-        playerWallClimb = new Animation("player/wallClimb", 7, 8, 32, 32, false);
-        playerWallClimb.setAnimRenderOffset(0, 2, 0, 0);
-    }
-
     public void run(boolean running) {
-        long sleepDuration;
-        long millis;
-        int nanos;
-        // long frames = 0;
-        // long start = System.nanoTime();
+        lastNs = System.nanoTime();
         while (running) {
-            /*
-             * frames++;
-             * if (System.nanoTime() - start >= 1_000_000_000L) { // 1 second
-             * System.out.println("Loops per second: " + frames);
-             * frames = 0;
-             * start = System.nanoTime();
-             * }
-             */
-            updateCounter = 0;
+            game.updateCounter = 0;
             long nowNs = System.nanoTime();
-            deltaTime = (nowNs - lastNs) / 1000_000_000.0; // Means Previous Frame Duration
+            long frameNs = nowNs - lastNs;
             lastNs = nowNs;
-            frameStepAccumulator += deltaTime;
+            long droppedBefore = scheduler.droppedGameNs;
+            int steps = scheduler.beginFrame(nowNs);
+            if (scheduler.droppedGameNs != droppedBefore) {
+                metrics.recordCatchUpCap(scheduler.droppedGameNs - droppedBefore);
+            }
+            deltaTime = scheduler.frameSeconds(); // Means Previous Frame Duration, in game time
 
-            // fixed updates
-            while (frameStepAccumulator >= UPDATE_STEP_DURATION) {
+            // fixed updates, at most scheduler.maxCatchUp
+            for (int step = 0; step < steps; step++) {
                 // Update
-                update(UPDATE_STEP_DURATION);
-                frameStepAccumulator -= UPDATE_STEP_DURATION;
+                long updateStart = System.nanoTime();
+                game.update(UPDATE_STEP_DURATION);
+                metrics.recordUpdate(System.nanoTime() - updateStart);
             }
 
-            // System.out.println("Physics Updates in this frame: " + updateCounter);
-
             // Interpolation visual purpose ko lagi ho alphaX, alphaY nikalna
-            interpolationFactor = frameStepAccumulator / UPDATE_STEP_DURATION;
-            updateInterpolation(interpolationFactor);
-
-            updateAnimation(deltaTime);
+            long phaseStart = System.nanoTime();
+            interpolationFactor = scheduler.interpolationFactor();
+            game.updateInterpolation(interpolationFactor);
+            long phaseEnd = System.nanoTime();
+            metrics.recordInterpolation(phaseEnd - phaseStart);
+
+            game.updateAnimation(deltaTime);
+            metrics.recordAnimation(System.nanoTime() - phaseEnd);
+            game.publishSnapshot();
             // Render
             render();
+            metrics.timeScale = scheduler.timeScale;
+            metrics.endFrame(frameNs, game.updateCounter, System.nanoTime());
 
-            // Calculating Sleep Duration
-            computedFrameDuration = (System.nanoTime() - nowNs); // is in ns
-            if (computedFrameDuration < LOOP_DURATION_NS) {
-                sleepDuration = LOOP_DURATION_NS - computedFrameDuration;
-                millis = sleepDuration / 1_000_000;
-                nanos = (int) (sleepDuration % 1_000_000);
-                try {
-                    Thread.sleep(millis, nanos);
-                } catch (InterruptedException e) {
-                }
+            long lateNs = scheduler.waitForNextFrame();
+            if (lateNs >= 0) {
+                metrics.recordWakeLateness(lateNs);
             }
         }
     }
 
-    public void update(double dt) {
-        framescount++;
-        updateCounter++;
-
-        // Update Movement
-
-        moving[0] = (inputs.movingRight ? 1 : 0) - (inputs.movingLeft ? 1 : 0);
-        moving[1] = (inputs.movingDown ? 1 : 0) - (inputs.movingUp ? 1 : 0);
-
-        // Player Updates
-        player.update(dt, moving);
-        // player2.update(dt, moving);
-
-        // Other future entities updates here
-        camera.updateCameraOffset();
-        cloudManager.update(dt);
-        /*
-         * if (framescount % 60 == 0) {
-         * lagSpike();
-         * }
-         */
+    public void render() {
+        if (bufferStrategy == null) {
+            if (scheduler.frameNs == 0) {
+                // uncapped: a frame every time the EDT is done painting the last one,
+                // instead of piling up repaints it merges anyway
+                if (repaintPending) {
+                    return;
+                }
+                repaintPending = true;
+            }
+            metrics.recordPaintRequest();
+            SwingUtilities.invokeLater(() -> panel.repaint()); // forwards repaint to EDT instead of game thread
+            return;
+        }
+        // Active rendering, drawn right here on the game thread. The loops are the
+        // documented way of handling buffers whose contents got lost or restored.
+        do {
+            do {
+                Graphics g = bufferStrategy.getDrawGraphics();
+                try {
+                    g.setColor(canvas.getBackground());
+                    g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight()); // clear paper
+                    renderFrame(g);
+                } finally {
+                    g.dispose();
+                }
+            } while (bufferStrategy.contentsRestored());
+            bufferStrategy.show();
+        } while (bufferStrategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync(); // flushes the drawing queue on Linux
     }
 
-    public void updateInterpolation(double ipf) {
-        // interpolation for player
-        player.updateInterpolation(ipf);
-        // player2.updateInterpolation(ipf);
+    // Draws one whole frame, on the EDT when repainting the panel or on the game
+    // thread with active rendering
+    public void renderFrame(Graphics g) {
+        long paintStart = System.nanoTime();
+        RenderSnapshot snapshot = game.snapshots.acquire();
+        if (framebuffer != null) {
+            renderWorld(framebufferGraphics, snapshot);
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g2.drawImage(framebuffer, 0, 0, viewWidth * pixelScale, viewHeight * pixelScale, null);
+        } else {
+            renderWorld(g, snapshot);
+        }
+        g.setFont(VERSION_FONT);
+        g.setColor(Color.BLACK);
+        g.drawString("Game Version: 1.0.1", 30, 30);
+        // font = new Font("Arial", Font.BOLD, 35);
+        // g.setFont(font);
+        // g.drawString("After Camera LERP (linear interpolation)", 150, 120);
+        // font = new Font("Arial", Font.BOLD, 22);
+        // g.setFont(font);
+        // g.drawString("-> Camera offset is calculated w.r.t CAMERA object,  which follows Player", 150, 170);
+        // g.drawString("-> More the distance between player and camera, More the camera speed", 150, 200);
+        // g.drawString("-> When camera reaches near player its speed decreases making smooth camera movement", 150, 230);
+
+        metrics.recordPaint(System.nanoTime() - paintStart);
+        metrics.drawOverlay(g);
     }
 
-    public void updateAnimation(double dt) {
-        player.updateAnimationRenderOffset();
-        player.updateAnimation(dt);
-        // player2.updateAnimationRenderOffset();
-        // player2.updateAnimation(dt);
-    }
+    // Everything that moves with the camera, in window coordinates
+    private void renderWorld(Graphics g, RenderSnapshot snapshot) {
+        if (raster != null) {
+            raster.begin();
+            bg.render(raster);
+            game.tileMap.render(raster, snapshot.cameraOffsetX, snapshot.cameraOffsetY);
+            snapshot.drawSprites(raster);
+            raster.finish();
+        } else if (scrollBlit != null) {
+            scrollBlit.render(g, bg, game.tileMap, snapshot.cameraOffsetX, snapshot.cameraOffsetY);
+            metrics.recordDirtyPixels(scrollBlit.dirtyPixelsLastFrame + snapshot.spritePixels());
+        } else {
+            bg.render(g);
+
+            //cloudManager.render(g);
+            // Tiles, other render for future
+            game.tileMap.render(g, snapshot.cameraOffsetX, snapshot.cameraOffsetY);
+        }
+        snapshot.drawBodies(g);
 
-    public void lagSpike() {
-        double x = 0;
-        for (int i = 0; i < 20000000; i++) {
-            x += Math.sin(i) * Math.cos(i);
+        // Player and other sprites render
+        if (raster == null) {
+            snapshot.drawSprites(g);
         }
-        System.out.println(x);
+        game.camera.render(g, snapshot);
     }
 
-    public void render() {
-        SwingUtilities.invokeLater(() -> panel.repaint()); // forwards repaint to EDT instead of game thread
+    // time between frame starts for GameOptions.fps, 0 for uncapped
+    static long frameNs(int fps) {
+        if (fps == GameOptions.FPS_DISPLAY) {
+            int refreshRate = DisplayMode.REFRESH_RATE_UNKNOWN;
+            if (!GraphicsEnvironment.isHeadless()) {
+                refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                        .getDisplayMode().getRefreshRate();
+            }
+            fps = refreshRate != DisplayMode.REFRESH_RATE_UNKNOWN ? refreshRate : GameOptions.DEFAULT_FPS;
+        }
+        return fps == GameOptions.FPS_UNCAPPED ? 0 : 1_000_000_000L / fps;
     }
 
     public static void main(String[] args) {
-        new App();
+        new App(GameOptions.parse(args));
     }
 }
 
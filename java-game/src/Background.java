@@ -1,15 +1,38 @@
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 
 public class Background {
+    static final String IMAGE_PATH = "normalBg/5.png";
     BufferedImage[] layers;
+    final int pixelScale;
 
-    public Background() {
+    public Background(int width, int height) {
+        this(width, height, 1);
+    }
+
+    // Covers width x height of the frame. With a pixelScale the image only has
+    // 1/pixelScale of the pixels, it is drawn through a 1/pixelScale transform
+    // (see App) and comes out 1:1 there.
+    public Background(int width, int height, int pixelScale) {
+        this.pixelScale = pixelScale;
+        int imageWidth = width / pixelScale, imageHeight = height / pixelScale;
         layers = new BufferedImage[5];
-        layers[4] = new GameImage().loadImage("normalBg/5.png");
+        // scaled to the frame once instead of on every draw, into an opaque image:
+        // the picture has no transparent pixels and an opaque image is copied
+        // instead of blended, which is most of the cost of drawing it
+        layers[4] = GameImage.createCompatibleImage(imageWidth, imageHeight, Transparency.OPAQUE);
+        Graphics2D g = layers[4].createGraphics();
+        g.drawImage(new GameImage().loadImage(IMAGE_PATH), 0, 0, imageWidth, imageHeight, null);
+        g.dispose();
     }
 
     public void render(Graphics g) {
-        g.drawImage(layers[4], 0, 0, 1200, 800, null);
+        g.drawImage(layers[4], 0, 0, layers[4].getWidth() * pixelScale, layers[4].getHeight() * pixelScale, null);
+    }
+
+    public void render(SoftwareRasterizer raster) {
+        raster.drawImage(layers[4], 0, 0, layers[4].getWidth() * pixelScale, layers[4].getHeight() * pixelScale);
     }
 }
@@ -2,19 +2,26 @@ import java.awt.Color;
 import java.awt.Graphics;
 
 public class Camera {
+    private static final Color FILL_COLOR = new Color(225, 200, 100, 100);
+    private static final Color BORDER_COLOR = new Color(0, 0, 0, 225);
     double xPos, yPos;
     final int cameraWidth = 50, cameraHeight = 50;
     double cameraVelocity = 80;
     int frameH, frameW;
     double cameraOffsetX, cameraOffsetY;
+    // Where it is drawn, between the position of the previous update and this
+    // one (see updateInterpolation). Frames can come faster than updates, a
+    // camera drawn where the last update left it would move in steps.
+    double prevX, prevY, alphaX, alphaY;
+    double renderOffsetX, renderOffsetY;
     double cameraDestinationX, cameraDestinationY;
-    Player player;
+    PhysicsEntity player; // any entity can be followed, not only the Player
     double dt;
     double cameraCatchupTime = 1;
     double smoothness = 3;
     Rect viewPort;
 
-    public Camera(Player player, int FRAME_WIDTH, int FRAME_HEIGHT, double dt) {
+    public Camera(PhysicsEntity player, int FRAME_WIDTH, int FRAME_HEIGHT, double dt) {
         xPos = player.rect.getCenterX();
         yPos = player.rect.getCenterY();
         this.player = player;
@@ -28,6 +35,8 @@ public class Camera {
     }
 
     public void updateCameraOffset() {
+        prevX = xPos;
+        prevY = yPos;
         double targetX = player.rect.getCenterX() - cameraWidth / 2;
         double targetY = player.rect.getCenterY() - cameraHeight / 2;
         double cameraPushX = 0;
@@ -47,13 +56,32 @@ public class Camera {
         // updating viewPort
         viewPort.xPos = xPos - frameW / 2;
         viewPort.yPos = yPos - frameH / 2;
+        updateInterpolation(1); // drawn where it is until told otherwise
     }
 
-    public void render(Graphics g) {
-        g.setColor(new Color(225, 200, 100, 100));
-        g.fillRect((int) (xPos + cameraOffsetX), (int) (yPos + cameraOffsetY), cameraWidth, cameraHeight);
-        g.setColor(new Color(0, 0, 0, 225));
-        g.drawRect((int) (xPos + cameraOffsetX), (int) (yPos + cameraOffsetY), cameraWidth, cameraHeight);
+    // ipf: how far the game is from the last update to the next one, 0..1
+    public void updateInterpolation(double ipf) {
+        alphaX = prevX + (xPos - prevX) * ipf;
+        alphaY = prevY + (yPos - prevY) * ipf;
+        renderOffsetX = -(alphaX - frameW / 2);
+        renderOffsetY = -(alphaY - frameH / 2);
+    }
+
+    public void writeSnapshot(RenderSnapshot snapshot) {
+        snapshot.cameraX = alphaX;
+        snapshot.cameraY = alphaY;
+        snapshot.cameraOffsetX = renderOffsetX;
+        snapshot.cameraOffsetY = renderOffsetY;
+    }
+
+    // draws the camera as it was when the snapshot was taken
+    public void render(Graphics g, RenderSnapshot snapshot) {
+        int x = (int) (snapshot.cameraX + snapshot.cameraOffsetX);
+        int y = (int) (snapshot.cameraY + snapshot.cameraOffsetY);
+        g.setColor(FILL_COLOR);
+        g.fillRect(x, y, cameraWidth, cameraHeight);
+        g.setColor(BORDER_COLOR);
+        g.drawRect(x, y, cameraWidth, cameraHeight);
         // g.fillRect((int) (xPos), (int) (yPos), cameraWidth, cameraHeight);
         // g.setColor(new Color(0, 0, 0, 50));
         // g.fillRect((int) (viewPort.xPos + cameraOffsetX), (int) (viewPort.yPos+ cameraOffsetY), viewPort.w, viewPort.h);
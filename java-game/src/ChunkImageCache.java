@@ -0,0 +1,105 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Keeps every visible TileChunk baked into a single image so a chunk costs one
+// drawImage per frame. Images are kept in least recently used order and the
+// oldest ones are dropped when the memory budget is exceeded.
+public class ChunkImageCache {
+    final int chunkPixels;
+    final long bytesPerImage;
+    final TileVariantRegistry registry;
+    long memoryBudget; // bytes
+    long usedBytes;
+    int bakes, hits, evictions;
+    // accessOrder = true, so iteration starts from the least recently drawn chunk
+    private final LinkedHashMap<Long, BakedChunk> images = new LinkedHashMap<>(64, 0.75f, true);
+
+    public ChunkImageCache(int chunkPixels, long memoryBudget, TileVariantRegistry registry) {
+        this.chunkPixels = chunkPixels;
+        this.registry = registry;
+        this.bytesPerImage = 4L * chunkPixels * chunkPixels; // 32 bit pixels
+        this.memoryBudget = memoryBudget;
+    }
+
+    public BufferedImage get(TileChunk chunk, int tileSize) {
+        long key = TileGrid.key(chunk.chunkX, chunk.chunkY);
+        BakedChunk baked = images.get(key);
+        if (baked != null && baked.version == chunk.version) {
+            hits++;
+            return baked.image;
+        }
+        if (baked == null) {
+            baked = new BakedChunk(createImage());
+            images.put(key, baked);
+            usedBytes += bytesPerImage;
+            evictOverBudget(key);
+        }
+        bake(chunk, baked, tileSize);
+        return baked.image;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        evictOverBudget(Long.MIN_VALUE);
+    }
+
+    public void clear() {
+        images.clear();
+        usedBytes = 0;
+    }
+
+    public int size() {
+        return images.size();
+    }
+
+    private void bake(TileChunk chunk, BakedChunk baked, int tileSize) {
+        Graphics2D g = baked.image.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, chunkPixels, chunkPixels);
+        g.setComposite(AlphaComposite.SrcOver);
+        for (int cell = 0; cell < chunk.cells.length; cell++) {
+            short id = chunk.cells[cell];
+            if (id == TileGrid.EMPTY) {
+                continue;
+            }
+            int x = (cell % TileMap.CHUNK_SIZE) * tileSize;
+            int y = (cell / TileMap.CHUNK_SIZE) * tileSize;
+            g.drawImage(registry.byId(id).image, x, y, tileSize, tileSize, null);
+        }
+        g.dispose();
+        baked.version = chunk.version;
+        bakes++;
+    }
+
+    // never evicts the chunk that is being drawn right now
+    private void evictOverBudget(long keepKey) {
+        Iterator<Map.Entry<Long, BakedChunk>> it = images.entrySet().iterator();
+        while (usedBytes > memoryBudget && it.hasNext()) {
+            Map.Entry<Long, BakedChunk> eldest = it.next();
+            if (eldest.getKey() == keepKey) {
+                continue;
+            }
+            eldest.getValue().image.flush();
+            it.remove();
+            usedBytes -= bytesPerImage;
+            evictions++;
+        }
+    }
+
+    private BufferedImage createImage() {
+        return GameImage.createCompatibleImage(chunkPixels, chunkPixels);
+    }
+
+    private static class BakedChunk {
+        final BufferedImage image;
+        int version = -1;
+
+        BakedChunk(BufferedImage image) {
+            this.image = image;
+        }
+    }
+}
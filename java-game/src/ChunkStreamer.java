@@ -0,0 +1,200 @@
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Pages the chunks of a binary map (MapFile) in and out around the camera. When
+// the camera enters another chunk the chunks within radius are queued, nearest
+// first, on a background thread that reads and decodes them. The game thread
+// installs finished chunks at the start of the next update, so the grid only
+// changes between physics steps and a step always sees the same tiles. Chunks
+// more than one ring outside the radius are dropped again.
+// A chunk physics needs before it has arrived is decoded on the spot by TileGrid
+// (a stall, counted), it is never treated as empty. Rendering may run on another
+// thread and can not decode, so update also decodes the chunks in view that have
+// not arrived yet (stalls as well).
+public class ChunkStreamer {
+    static final int DEFAULT_RADIUS = 4; // chunks around the camera chunk
+    static final long DEFAULT_MEMORY_BUDGET = 8L * 1024 * 1024; // bytes of decoded chunks
+    static final int BYTES_PER_CHUNK = TileChunk.CELLS * 2 + 64; // cells + object headers
+
+    final TileMap map;
+    final MapFile file;
+    private final ExecutorService loader;
+    private final ConcurrentLinkedQueue<LoadedChunk> loaded = new ConcurrentLinkedQueue<>();
+    private final HashSet<Long> pending = new HashSet<>(); // queued, not installed yet
+    int radius;
+    long memoryBudget;
+    private int centerChunkX, centerChunkY;
+    private boolean recenter = true; // request and evict on the next update even if the camera did not move
+    private int stallBaseline;
+    private int viewMinChunkX, viewMinChunkY, viewMaxChunkX, viewMaxChunkY; // as of the last decodeInView
+
+    // metrics
+    int residentChunks; // as of the last eviction pass, plus installs since
+    long chunksLoaded, chunksEvicted, chunksDiscarded;
+    long loadLatencyTotalNs, loadLatencyMaxNs; // queued -> installed
+
+    public ChunkStreamer(TileMap map, int radius, long memoryBudget) {
+        this.map = map;
+        this.file = map.source;
+        if (file == null) {
+            throw new RuntimeException("Only maps loaded from a MapFile can be streamed");
+        }
+        this.radius = radius;
+        this.memoryBudget = memoryBudget;
+        this.loader = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "chunk-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void configure(int radius, long memoryBudget) {
+        this.radius = radius;
+        this.memoryBudget = memoryBudget;
+        recenter = true;
+    }
+
+    // Decodes everything around the camera right away, for startup before the
+    // game loop runs. These decodes are not counted as stalls.
+    public void prime(Camera camera) {
+        int chunkX = cameraChunkX(camera), chunkY = cameraChunkY(camera);
+        int r = effectiveRadius();
+        for (int y = chunkY - r; y <= chunkY + r; y++) {
+            for (int x = chunkX - r; x <= chunkX + r; x++) {
+                map.grid.chunkAt(x, y);
+            }
+        }
+        decodeInView(camera);
+        stallBaseline = map.grid.lazyDecodes.get();
+        update(camera);
+    }
+
+    // Called by the game thread at the start of every update
+    public void update(Camera camera) {
+        installLoaded();
+        decodeInView(camera);
+        int chunkX = cameraChunkX(camera), chunkY = cameraChunkY(camera);
+        if (chunkX == centerChunkX && chunkY == centerChunkY && !recenter) {
+            return;
+        }
+        recenter = false;
+        centerChunkX = chunkX;
+        centerChunkY = chunkY;
+        int r = effectiveRadius();
+        for (int ring = 0; ring <= r; ring++) {
+            for (int y = chunkY - ring; y <= chunkY + ring; y++) {
+                // only the border of the ring, the inside was done by the smaller rings
+                int step = y == chunkY - ring || y == chunkY + ring ? 1 : Math.max(1, 2 * ring);
+                for (int x = chunkX - ring; x <= chunkX + ring; x += step) {
+                    request(x, y);
+                }
+            }
+        }
+        // one ring of slack so walking along a chunk border does not load and drop the same chunks
+        // and never the chunks in view, they would only be decoded again in the next update
+        chunksEvicted += map.grid.evictOutside(Math.min(chunkX - r - 1, viewMinChunkX),
+                Math.min(chunkY - r - 1, viewMinChunkY), Math.max(chunkX + r + 1, viewMaxChunkX),
+                Math.max(chunkY + r + 1, viewMaxChunkY));
+        residentChunks = map.grid.residentFileChunks;
+    }
+
+    // chunks physics or the view needed before the loader had them, since prime
+    public int stalls() {
+        return map.grid.lazyDecodes.get() - stallBaseline;
+    }
+
+    public int pendingChunks() {
+        return pending.size();
+    }
+
+    public double averageLoadLatencyMs() {
+        return chunksLoaded == 0 ? 0 : loadLatencyTotalNs / 1e6 / chunksLoaded;
+    }
+
+    public String stats() {
+        return String.format("resident %d, pending %d, loaded %d, evicted %d, discarded %d, "
+                + "latency avg %.2f ms max %.2f ms, stalls %d", residentChunks, pendingChunks(), chunksLoaded,
+                chunksEvicted, chunksDiscarded, averageLoadLatencyMs(), loadLatencyMaxNs / 1e6, stalls());
+    }
+
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    // the radius is shrunk when the memory budget can not hold it plus the slack ring
+    int effectiveRadius() {
+        long maxResident = memoryBudget / BYTES_PER_CHUNK;
+        int r = radius;
+        while (r > 0 && (long) (2 * r + 3) * (2 * r + 3) > maxResident) {
+            r--;
+        }
+        return r;
+    }
+
+    private void request(int chunkX, int chunkY) {
+        int entry = map.grid.undecodedEntry(chunkX, chunkY);
+        if (entry < 0 || !pending.add(TileGrid.key(chunkX, chunkY))) {
+            return;
+        }
+        long requestedAt = System.nanoTime();
+        loader.execute(() -> loaded.add(new LoadedChunk(file.decodeChunk(entry), requestedAt)));
+    }
+
+    // The camera view plus a chunk all around, as the camera still moves in this
+    // update and is drawn between two updates
+    private void decodeInView(Camera camera) {
+        int pixels = TileGrid.CHUNK_SIZE * map.tileSize;
+        Rect view = camera.viewPort;
+        viewMinChunkX = Math.floorDiv((int) Math.floor(view.xPos), pixels) - 1;
+        viewMinChunkY = Math.floorDiv((int) Math.floor(view.yPos), pixels) - 1;
+        viewMaxChunkX = Math.floorDiv((int) Math.floor(view.xPos + view.w), pixels) + 1;
+        viewMaxChunkY = Math.floorDiv((int) Math.floor(view.yPos + view.h), pixels) + 1;
+        for (int y = viewMinChunkY; y <= viewMaxChunkY; y++) {
+            for (int x = viewMinChunkX; x <= viewMaxChunkX; x++) {
+                map.grid.chunkAt(x, y);
+            }
+        }
+    }
+
+    private void installLoaded() {
+        int r = effectiveRadius() + 1;
+        LoadedChunk done;
+        while ((done = loaded.poll()) != null) {
+            TileChunk chunk = done.chunk;
+            pending.remove(TileGrid.key(chunk.chunkX, chunk.chunkY));
+            // the camera may have moved on, or the chunk was decoded on the spot meanwhile
+            if (Math.abs(chunk.chunkX - centerChunkX) > r || Math.abs(chunk.chunkY - centerChunkY) > r
+                    || !map.grid.install(chunk)) {
+                chunksDiscarded++;
+                continue;
+            }
+            long latency = System.nanoTime() - done.requestedAt;
+            loadLatencyTotalNs += latency;
+            loadLatencyMaxNs = Math.max(loadLatencyMaxNs, latency);
+            chunksLoaded++;
+            residentChunks++;
+        }
+    }
+
+    private int cameraChunkX(Camera camera) {
+        int pixels = TileGrid.CHUNK_SIZE * map.tileSize;
+        return Math.floorDiv((int) Math.floor(camera.xPos + camera.cameraWidth / 2.0), pixels);
+    }
+
+    private int cameraChunkY(Camera camera) {
+        int pixels = TileGrid.CHUNK_SIZE * map.tileSize;
+        return Math.floorDiv((int) Math.floor(camera.yPos + camera.cameraHeight / 2.0), pixels);
+    }
+
+    private static class LoadedChunk {
+        final TileChunk chunk;
+        final long requestedAt;
+
+        LoadedChunk(TileChunk chunk, long requestedAt) {
+            this.chunk = chunk;
+            this.requestedAt = requestedAt;
+        }
+    }
+}
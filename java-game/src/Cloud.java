@@ -7,6 +7,7 @@ import java.awt.Color;
 
 public class Cloud {
     double xPos, yPos, alphaX, alphaY, wrappedX, wrappedY;
+    double prevX, interpolatedX; // xPos of the previous update, xPos drawn (see Camera.updateInterpolation)
     int w, h;
     BufferedImage img;
     Camera camera;
@@ -16,7 +17,7 @@ public class Cloud {
     double parallexFactor;
 
     public Cloud(double xPos, double yPos, int imgtype, Camera camera, BufferedImage img) {
-        this.xPos = xPos;
+        this.xPos = this.prevX = this.interpolatedX = xPos;
         this.yPos = yPos;
         this.camera = camera;
         this.img = img;
@@ -28,12 +29,17 @@ public class Cloud {
     }
 
     public void update(double dt) {
+        prevX = xPos;
         xPos += velocityX * dt;
     }
 
+    public void updateInterpolation(double ipf) {
+        interpolatedX = prevX + (xPos - prevX) * ipf;
+    }
+
     public void render(Graphics g) {
-        alphaX = xPos + camera.cameraOffsetX * depth;
-        alphaY = yPos + camera.cameraOffsetY * depth;
+        alphaX = interpolatedX + camera.renderOffsetX * depth;
+        alphaY = yPos + camera.renderOffsetY * depth;
         if (alphaX >= 0) {
             // System.out.println("Cloud Going right");
             wrappedX = alphaX % (camera.viewPort.w);
@@ -32,6 +32,12 @@ public class CloudManager {
         }
     }
 
+    public void updateInterpolation(double ipf) {
+        for (Cloud cloud : clouds) {
+            cloud.updateInterpolation(ipf);
+        }
+    }
+
     public void render(Graphics g){
         for(Cloud cloud : clouds){
             cloud.render(g);
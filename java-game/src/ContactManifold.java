@@ -0,0 +1,125 @@
+// What an entity touched during one fixed step, filled in by its collision
+// resolution and read by everything that decides on walls afterwards (hold,
+// slide, climb), so those decisions do not each walk the tiles around the
+// entity again. Reset at the start of every step, the ledges must only be asked
+// for once the step's collisions are resolved.
+// The ledge of each side is the topmost tile of the PhysicsTilesAround window
+// beyond the entity's left edge on that side. It is only looked for when
+// someone asks, and then for both sides in one pass over the window.
+class ContactManifold {
+    static final double NO_LEDGE = Double.MAX_VALUE;
+
+    boolean onGround, hitCeiling;
+    boolean touchingWallLeft, touchingWallRight;
+    // sum of the normals of the touched surfaces, pointing away from them
+    // (standing on the ground is normalY -1, a wall on the right normalX -1)
+    int normalX, normalY;
+    int groundGridX, groundGridY; // tile stood on, valid when onGround
+
+    private final Rect body;
+    private PhysicsTilesAround tilesAround;
+    private boolean ledgesFound;
+    private double ledgeYLeft, ledgeYRight;
+    private OnGridTile ledgeTileLeft, ledgeTileRight; // valid until the window is updated again
+    int tilesVisited; // tiles looked at for ledges, for benchmarks
+
+    public ContactManifold(Rect body) {
+        this.body = body;
+    }
+
+    public void reset(PhysicsTilesAround tilesAround) {
+        this.tilesAround = tilesAround;
+        onGround = hitCeiling = touchingWallLeft = touchingWallRight = false;
+        normalX = normalY = 0;
+        ledgesFound = false;
+    }
+
+    public void touchWall(boolean onTheRight) {
+        if (onTheRight) {
+            touchingWallRight = true;
+            normalX -= 1;
+        } else {
+            touchingWallLeft = true;
+            normalX += 1;
+        }
+    }
+
+    // the feet hit the top of a tile, the one under the middle of the feet if
+    // there is one there, else under one of the corners
+    public void touchGround(TileMap map) {
+        onGround = true;
+        normalY -= 1;
+        int tileSize = map.tileSize;
+        groundGridY = (int) Math.floor((body.yPos + body.h) / tileSize);
+        groundGridX = (int) Math.floor(body.getCenterX() / tileSize);
+        if (map.tileAt(groundGridX, groundGridY) == TileGrid.EMPTY) {
+            int left = (int) Math.floor(body.xPos / tileSize);
+            groundGridX = map.tileAt(left, groundGridY) != TileGrid.EMPTY ? left
+                    : (int) Math.floor((body.xPos + body.w - 1) / tileSize);
+        }
+    }
+
+    public void touchCeiling() {
+        hitCeiling = true;
+        normalY += 1;
+    }
+
+    public boolean touchingSideWall() {
+        return touchingWallLeft || touchingWallRight;
+    }
+
+    // y of the ledge on that side, NO_LEDGE when the window has no tile there
+    public double ledgeY(boolean right) {
+        findLedges();
+        return right ? ledgeYRight : ledgeYLeft;
+    }
+
+    public OnGridTile ledgeTile(boolean right) {
+        findLedges();
+        return right ? ledgeTileRight : ledgeTileLeft;
+    }
+
+    // In the air against a wall, with the top of the body 16 to 32 px below the
+    // ledge on the facing side: close enough to pull up onto it
+    public boolean canClimbLedge(boolean facingRight) {
+        if (!touchingSideWall() || onGround) {
+            return false;
+        }
+        double ledge = ledgeY(facingRight);
+        return body.yPos <= ledge + 32 && body.yPos >= ledge + 16;
+    }
+
+    // In the air against a wall that goes on at least 32 px above the body: it can
+    // be held and slid down
+    public boolean canHoldWall(boolean facingRight) {
+        if (onGround || !touchingSideWall()) {
+            return false;
+        }
+        return ledgeY(facingRight) <= body.yPos - 32;
+    }
+
+    private void findLedges() {
+        if (ledgesFound) {
+            return;
+        }
+        ledgesFound = true;
+        ledgeYLeft = ledgeYRight = NO_LEDGE;
+        ledgeTileLeft = ledgeTileRight = null;
+        // first in window order (top to bottom, left to right) wins a tie
+        for (int i = 0; i < tilesAround.tilesCount; i++) {
+            OnGridTile tile = tilesAround.tiles[i];
+            if (tile == null || tile.tileVariant == null) {
+                continue;
+            }
+            if (tile.rect.xPos > body.xPos && tile.rect.yPos < ledgeYRight) {
+                ledgeYRight = tile.rect.yPos;
+                ledgeTileRight = tile;
+            }
+            if (tile.rect.xPos < body.xPos && tile.rect.yPos < ledgeYLeft) {
+                ledgeYLeft = tile.rect.yPos;
+                ledgeTileLeft = tile;
+            }
+        }
+        tilesVisited += tilesAround.tilesCount;
+    }
+}
@@ -0,0 +1,280 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+// What the game loop spends its time on, to find where a stutter comes from.
+// Latencies of the update, interpolation, animation and paint phases and of the
+// whole frame go into LatencyHistograms, next to the number of fixed updates
+// each frame had to catch up, the frames the screen did not get and the GC
+// pauses. The pacing of the loop (LoopScheduler) shows as the jitter of the
+// frame time around its target and how late the loop woke up after waiting for
+// the next frame, with the frames that hit the catch-up cap. With the scroll-blit
+// renderer the pixels repainted per frame (exposed strips plus sprites) are
+// counted too. Every interval the numbers are summed up for the overlay (F3 in the
+// game), optionally logged and written as a CSV row, then started over.
+// Paint is recorded on the EDT when the panel is repainted and GC pauses on a
+// JMX thread, so everything goes through this object's lock.
+public class FrameMetrics {
+    static final long DEFAULT_INTERVAL_NS = 1_000_000_000L;
+    private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 13);
+    private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 170);
+    private static final String[] PHASES = { "update", "interp", "anim", "paint", "frame", "jitter", "late" };
+
+    final LatencyHistogram update = new LatencyHistogram();
+    final LatencyHistogram interpolation = new LatencyHistogram();
+    final LatencyHistogram animation = new LatencyHistogram();
+    final LatencyHistogram paint = new LatencyHistogram();
+    final LatencyHistogram frame = new LatencyHistogram(); // start of one loop iteration to the next
+    final LatencyHistogram jitter = new LatencyHistogram(); // |frame - targetFrameNs|
+    final LatencyHistogram wakeLateness = new LatencyHistogram(); // woke up after the next frame's start
+    final LatencyHistogram gcPause = new LatencyHistogram();
+    private final LatencyHistogram[] phases = { update, interpolation, animation, paint, frame, jitter,
+            wakeLateness };
+
+    final long targetFrameNs;
+    final long intervalNs;
+    volatile boolean overlayVisible;
+    boolean log; // prints the summary line of every interval
+    private PrintWriter csv;
+
+    // this interval
+    long frames, updates;
+    long catchUpFrames; // frames that ran more than one fixed update
+    int maxUpdatesPerFrame;
+    long droppedFrames;
+    long paintRequests, paints; // repaints asked for and done, passive rendering only
+    long cappedFrames, droppedGameNs; // catch-up cap of the scheduler
+    volatile double timeScale = 1; // set by the game loop when time dilation is on
+    long dirtyFrames, dirtyPixels, maxDirtyPixels; // scroll-blit renderer only
+    // whole run
+    long totalFrames, totalDroppedFrames, totalGcPauses;
+
+    private long intervalStartNs;
+    private long runStartNs;
+    private volatile List<String> overlayLines = List.of("collecting...");
+    private final List<Runnable> unregister = new ArrayList<>();
+
+    public FrameMetrics(long targetFrameNs, long intervalNs) {
+        this.targetFrameNs = targetFrameNs;
+        this.intervalNs = intervalNs;
+        this.runStartNs = this.intervalStartNs = System.nanoTime();
+        listenToGc();
+    }
+
+    // appends one row per interval to the file, with a header when it is new
+    public synchronized void writeCsv(String path) {
+        try {
+            boolean fresh = new File(path).length() == 0; // also when it does not exist
+            csv = new PrintWriter(new FileWriter(path, true));
+            if (fresh) {
+                StringBuilder header = new StringBuilder("time_s,frames,updates,catch_up_frames,max_updates_per_frame,"
+                        + "dropped_frames");
+                for (String phase : PHASES) {
+                    header.append(',').append(phase).append("_p50_us,").append(phase).append("_p99_us,")
+                            .append(phase).append("_max_us");
+                }
+                header.append(",capped_frames,dropped_game_ms,time_scale,gc_pauses,gc_pause_total_ms,gc_pause_max_ms,"
+                        + "dirty_px_avg,dirty_px_max");
+                csv.println(header);
+                csv.flush();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open metrics file " + path, e);
+        }
+    }
+
+    public synchronized void recordUpdate(long ns) {
+        update.record(ns);
+    }
+
+    public synchronized void recordInterpolation(long ns) {
+        interpolation.record(ns);
+    }
+
+    public synchronized void recordAnimation(long ns) {
+        animation.record(ns);
+    }
+
+    public synchronized void recordPaintRequest() {
+        paintRequests++;
+    }
+
+    public synchronized void recordWakeLateness(long ns) {
+        wakeLateness.record(ns);
+    }
+
+    // a frame that had more updates to run than the scheduler allows
+    public synchronized void recordCatchUpCap(long droppedGameNs) {
+        cappedFrames++;
+        this.droppedGameNs += droppedGameNs;
+    }
+
+    // pixels a frame actually repainted, see ScrollBlitRenderer
+    public synchronized void recordDirtyPixels(long pixels) {
+        dirtyFrames++;
+        dirtyPixels += pixels;
+        maxDirtyPixels = Math.max(maxDirtyPixels, pixels);
+    }
+
+    public synchronized void recordPaint(long ns) {
+        paint.record(ns);
+        paints++;
+    }
+
+    // Called by the game loop once per iteration with the time since the start of
+    // the previous one. A frame that took half a frame time or more too long
+    // counts the frames the screen went without a new picture.
+    public synchronized void endFrame(long frameNs, int updatesThisFrame, long nowNs) {
+        frames++;
+        totalFrames++;
+        if (totalFrames > 1 && targetFrameNs == 0) {
+            frame.record(frameNs); // uncapped, there is no target to miss
+        } else if (totalFrames > 1) { // the first one measures the startup
+            frame.record(frameNs);
+            jitter.record(Math.abs(frameNs - targetFrameNs));
+            if (frameNs * 2 >= targetFrameNs * 3) {
+                droppedFrames += Math.round((double) frameNs / targetFrameNs) - 1;
+            }
+        }
+        updates += updatesThisFrame;
+        if (updatesThisFrame > 1) {
+            catchUpFrames++;
+        }
+        maxUpdatesPerFrame = Math.max(maxUpdatesPerFrame, updatesThisFrame);
+        if (nowNs - intervalStartNs >= intervalNs) {
+            endInterval(nowNs);
+        }
+    }
+
+    public void drawOverlay(Graphics g) {
+        if (!overlayVisible) {
+            return;
+        }
+        List<String> lines = overlayLines;
+        g.setFont(OVERLAY_FONT);
+        int lineHeight = g.getFontMetrics().getHeight();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, g.getFontMetrics().stringWidth(line));
+        }
+        g.setColor(OVERLAY_BACKGROUND);
+        g.fillRect(20, 45, width + 20, lines.size() * lineHeight + 10);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < lines.size(); i++) {
+            g.drawString(lines.get(i), 30, 45 + 5 + g.getFontMetrics().getAscent() + i * lineHeight);
+        }
+    }
+
+    public synchronized void close() {
+        for (Runnable listener : unregister) {
+            listener.run();
+        }
+        unregister.clear();
+        if (csv != null) {
+            csv.close();
+            csv = null;
+        }
+    }
+
+    private void endInterval(long nowNs) {
+        double seconds = (nowNs - intervalStartNs) / 1e9;
+        if (paintRequests > paints) {
+            // Swing merged those repaints with later ones
+            droppedFrames += paintRequests - paints;
+        }
+        totalDroppedFrames += droppedFrames;
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%.0f fps, %.0f updates/s, catch-up frames %d (max %d updates), dropped %d (total %d)",
+                frames / seconds, updates / seconds, catchUpFrames, maxUpdatesPerFrame, droppedFrames,
+                totalDroppedFrames));
+        lines.add(String.format("capped frames %d, %.0f ms of game time dropped, time scale %.2f", cappedFrames,
+                droppedGameNs / 1e6, timeScale));
+        lines.add("phase     p50 us    p99 us    max us");
+        for (int i = 0; i < phases.length; i++) {
+            LatencyHistogram h = phases[i];
+            lines.add(String.format("%-7s %8.1f  %8.1f  %8.1f", PHASES[i], h.valueAtPercentile(50) / 1e3,
+                    h.valueAtPercentile(99) / 1e3, h.max() / 1e3));
+        }
+        lines.add(String.format("gc pauses %d, %.1f ms, max %.1f ms (total %d)", gcPause.count(),
+                gcPause.total() / 1e6, gcPause.max() / 1e6, totalGcPauses));
+        long averageDirtyPixels = dirtyFrames == 0 ? 0 : dirtyPixels / dirtyFrames;
+        if (dirtyFrames > 0) {
+            lines.add(String.format("repainted %d px/frame, max %d", averageDirtyPixels, maxDirtyPixels));
+        }
+        overlayLines = lines;
+
+        if (log) {
+            System.out.println("[metrics] " + String.join(" | ", lines));
+        }
+        if (csv != null) {
+            StringBuilder row = new StringBuilder();
+            row.append(String.format("%.3f,%d,%d,%d,%d,%d", (nowNs - runStartNs) / 1e9, frames, updates,
+                    catchUpFrames, maxUpdatesPerFrame, droppedFrames));
+            for (LatencyHistogram h : phases) {
+                row.append(String.format(",%.1f,%.1f,%.1f", h.valueAtPercentile(50) / 1e3,
+                        h.valueAtPercentile(99) / 1e3, h.max() / 1e3));
+            }
+            row.append(String.format(",%d,%.1f,%.2f", cappedFrames, droppedGameNs / 1e6, timeScale));
+            row.append(String.format(",%d,%.2f,%.2f", gcPause.count(), gcPause.total() / 1e6, gcPause.max() / 1e6));
+            row.append(String.format(",%d,%d", averageDirtyPixels, maxDirtyPixels));
+            csv.println(row);
+            csv.flush();
+        }
+
+        for (LatencyHistogram h : phases) {
+            h.reset();
+        }
+        gcPause.reset();
+        frames = updates = catchUpFrames = droppedFrames = paintRequests = paints = cappedFrames = droppedGameNs = 0;
+        dirtyFrames = dirtyPixels = maxDirtyPixels = 0;
+        maxUpdatesPerFrame = 0;
+        intervalStartNs = nowNs;
+    }
+
+    // Every collection the JVM reports, concurrent cycles (which do not stop the
+    // game thread) left out
+    private void listenToGc() {
+        NotificationListener listener = (Notification notification, Object handback) -> {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+                    .from((CompositeData) notification.getUserData());
+            if (info.getGcName().contains("Concurrent") || info.getGcAction().contains("concurrent")) {
+                return;
+            }
+            synchronized (this) {
+                gcPause.record(info.getGcInfo().getDuration() * 1_000_000L);
+                totalGcPauses++;
+            }
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener(listener, null, null);
+                unregister.add(() -> {
+                    try {
+                        emitter.removeNotificationListener(listener);
+                    } catch (ListenerNotFoundException e) {
+                        // already gone
+                    }
+                });
+            }
+        }
+    }
+}
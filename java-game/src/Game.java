@@ -0,0 +1,245 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+// Simulation state of the game: map, entities, camera and the fixed-step update.
+// Nothing in here needs a window, App drives it from its game loop and draws the
+// snapshots it publishes, Headless runs it without any display.
+public class Game {
+    public static final double UPDATE_FREQUENCY = 60;
+    public static final double UPDATE_STEP_DURATION = 1.0 / UPDATE_FREQUENCY;
+    public int updateCounter;
+
+    public final double ACCLN_DUE_TO_GRAVITY = 600; // px / second square
+    public final double TERMINAL_VELOCITY = 600;
+
+    // image variables
+    private final GameImage loader = new GameImage();
+    static final int GRASS_VARIANTS = 41, CLOUD_VARIANTS = 5;
+
+    // Folder and frames count of every player animation, read by both loadAll and
+    // assetPaths so the preloaded images are the ones the animations ask for
+    enum PlayerAnimationAsset {
+        IDLE("player/idle", 9), WALK("player/walk", 11), RUN("player/run", 15),
+        JUMP_START("player/jumpStart", 2), JUMP_FALL("player/jumpFall", 2),
+        JUMP_TRANSITION("player/jumpTransition", 2), WALL_CONTACT("player/wallContact", 2),
+        WALL_SLIDE("player/wallSlide", 2), WALL_CLIMB("player/wallClimb", 7);
+
+        final String folder;
+        final int framesCount;
+
+        PlayerAnimationAsset(String folder, int framesCount) {
+            this.folder = folder;
+            this.framesCount = framesCount;
+        }
+
+        // frames count is one less for now, later i will change. This is because
+        // loadimages has (i+1) instead of i as tileset images starts from 1.png
+        int imageCount() {
+            return framesCount + 1;
+        }
+
+        Animation load(int animFrequency, boolean loop) {
+            return new Animation(folder, framesCount, animFrequency, 32, 32, loop);
+        }
+    }
+    final TextureAtlas atlas = new TextureAtlas(); // tiles, clouds and animation frames
+
+    int framescount = 1;
+
+    InputState inputs = new InputState();
+    int[] moving = { 0, 0 };
+    // the game thread publishes a copy of the world every frame, rendering only reads those
+    final SnapshotBuffer snapshots = new SnapshotBuffer();
+
+    // Entities
+    Player player, player2;
+    PhysicsWorld physicsWorld; // every other simulated body (enemies, projectiles...)
+    Camera camera;
+    Animation playerIdle, playerWalk, playerRun, playerJumpStart, playerJumpFall, playerJumpTransition,
+            playerWallContact, playerWallJump, playerWallSlide, playerWallClimb;
+    AnimationStateMachine<Player> playerAnimations;
+
+    // tiles Variables
+    TileVariantRegistry tileVariantRegistry = new TileVariantRegistry();
+    TileMap tileMap;
+    MapData map;
+    ChunkStreamer chunkStreamer; // only for binary maps, JSON maps are fully in memory
+
+    // Background layers
+    CloudVariantRegistry cloudVariantRegestry = new CloudVariantRegistry();
+    CloudManager cloudManager;
+    int CLOUD_COUNT = 30;
+    Random random = new Random();
+
+    public Game(MapData map, int viewWidth, int viewHeight) {
+        this(viewWidth, viewHeight, tileMap -> tileMap.loadMapData(map));
+        this.map = map;
+    }
+
+    // streams a JSON map resource straight into the tile grid or maps a binary
+    // map file (see Maploader.load), map stays null
+    public Game(String mapPath, int viewWidth, int viewHeight) {
+        this(viewWidth, viewHeight, tileMap -> Maploader.load(mapPath, tileMap));
+    }
+
+    private Game(int viewWidth, int viewHeight, Consumer<TileMap> mapLoader) {
+        loadAll();
+
+        // tiles
+        // player
+        player = new Player(this, 300, 50, 30, 90);
+        // player2 = new Player(this, 300, 40, 30, 90);
+
+        // camera
+        camera = new Camera(player, viewWidth, viewHeight, UPDATE_STEP_DURATION);
+
+        //Clouds
+        cloudManager = new CloudManager(CLOUD_COUNT, camera, cloudVariantRegestry, viewWidth, viewHeight);
+
+        tileMap = new TileMap(tileVariantRegistry, camera);
+        mapLoader.accept(tileMap);
+        if (tileMap.source != null) {
+            chunkStreamer = new ChunkStreamer(tileMap, ChunkStreamer.DEFAULT_RADIUS,
+                    ChunkStreamer.DEFAULT_MEMORY_BUDGET);
+            chunkStreamer.prime(camera);
+        }
+        player.physicsTilesAround = new PhysicsTilesAround(player, tileMap, 32);
+        // player2.physicsTilesAround = new PhysicsTilesAround(player2, tileMap, 32);
+        physicsWorld = new PhysicsWorld(tileMap, ACCLN_DUE_TO_GRAVITY, TERMINAL_VELOCITY);
+        publishSnapshot(); // so the first paint already has something to draw
+    }
+
+    public void loadTileAssets() {
+        // Misellaneous tiles
+        tileVariantRegistry.register("ground", 0, atlas.add(loader.loadImage("tiles/ground/0.png")));
+        tileVariantRegistry.register("stone", 0, atlas.add(loader.loadImage("tiles/stone/0.png")));
+
+        // Grass Tiles
+        for (int i = 1; i <= GRASS_VARIANTS; i++) {
+            tileVariantRegistry.register("grass", i, atlas.add(loader.loadImage("tiles/grass/" + i + ".png")));
+        }
+        // Cloud variants
+        for (int i = 1; i <= CLOUD_VARIANTS; i++) {
+            cloudVariantRegestry.register(i, atlas.add(loader.loadImage("clouds/" + i + ".png")));
+        }
+    }
+
+    // Every image loadAll asks for. They are all decoded in parallel up front, the
+    // loads in loadAll then only wait for the ones not done yet.
+    static List<String> assetPaths() {
+        List<String> paths = new ArrayList<>();
+        paths.add("tiles/ground/0.png");
+        paths.add("tiles/stone/0.png");
+        paths.addAll(GameImage.folderPaths("tiles/grass", GRASS_VARIANTS));
+        paths.addAll(GameImage.folderPaths("clouds", CLOUD_VARIANTS));
+        for (PlayerAnimationAsset asset : PlayerAnimationAsset.values()) {
+            paths.addAll(GameImage.folderPaths(asset.folder, asset.imageCount()));
+        }
+        return paths;
+    }
+
+    public void loadAll() {
+        GameImage.preload(assetPaths());
+
+        // loading tiles variants
+        loadTileAssets();
+
+        playerIdle = PlayerAnimationAsset.IDLE.load(10, true);
+        playerIdle.setAnimRenderOffset(0, 0, 0, 0);
+
+        playerWalk = PlayerAnimationAsset.WALK.load(12, true);
+        playerWalk.setAnimRenderOffset(0, 0, 0, 0);
+
+        playerRun = PlayerAnimationAsset.RUN.load(16, true);
+        playerRun.setAnimRenderOffset(0, 0, 0, 0);
+
+        playerJumpStart = PlayerAnimationAsset.JUMP_START.load(10, true);
+        playerJumpFall = PlayerAnimationAsset.JUMP_FALL.load(10, true);
+        playerJumpTransition = PlayerAnimationAsset.JUMP_TRANSITION.load(4, false);
+        playerWallContact = PlayerAnimationAsset.WALL_CONTACT.load(8, false);
+        playerWallContact.setAnimRenderOffset(-3, 0, 0, 0);
+        playerWallSlide = PlayerAnimationAsset.WALL_SLIDE.load(10, true);
+        playerWallSlide.setAnimRenderOffset(-3, 0, 0, 0);
+        playerWallClimb = PlayerAnimationAsset.WALL_CLIMB.load(8, false);
+        playerWallClimb.setAnimRenderOffset(0, 2, 0, 0);
+
+        for (Animation animation : new Animation[] { playerIdle, playerWalk, playerRun, playerJumpStart,
+                playerJumpFall, playerJumpTransition, playerWallContact, playerWallSlide, playerWallClimb }) {
+            atlas.addAll(animation.frames);
+        }
+        atlas.finish();
+        playerAnimations = Player.createAnimationStateMachine(this);
+    }
+
+    public void update(double dt) {
+        framescount++;
+        updateCounter++;
+
+        // Update Movement
+
+        moving[0] = (inputs.movingRight ? 1 : 0) - (inputs.movingLeft ? 1 : 0);
+        moving[1] = (inputs.movingDown ? 1 : 0) - (inputs.movingUp ? 1 : 0);
+
+        // chunks streamed in since the last update, before anything reads the map
+        if (chunkStreamer != null) {
+            chunkStreamer.update(camera);
+        }
+
+        // Player Updates
+        player.update(dt, moving);
+        // player2.update(dt, moving);
+
+        // Other entities updates
+        physicsWorld.step(dt);
+        camera.updateCameraOffset();
+        cloudManager.update(dt);
+        /*
+         * if (framescount % 60 == 0) {
+         * lagSpike();
+         * }
+         */
+    }
+
+    // Positions drawn by the next snapshot, ipf of the way from the previous update
+    // to the last one, so frames between updates still move smoothly
+    public void updateInterpolation(double ipf) {
+        // interpolation for player
+        player.updateInterpolation(ipf);
+        // player2.updateInterpolation(ipf);
+        physicsWorld.updateInterpolation(ipf);
+        camera.updateInterpolation(ipf);
+        cloudManager.updateInterpolation(ipf);
+    }
+
+    public void updateAnimation(double dt) {
+        player.updateAnimationRenderOffset();
+        player.updateAnimation(dt);
+        // player2.updateAnimationRenderOffset();
+        // player2.updateAnimation(dt);
+    }
+
+    public void publishSnapshot() {
+        RenderSnapshot snapshot = snapshots.beginWrite();
+        camera.writeSnapshot(snapshot);
+        physicsWorld.writeSnapshot(snapshot);
+        player.writeSnapshot(snapshot);
+        // player2.writeSnapshot(snapshot);
+        snapshots.publish();
+    }
+
+    // jump is edge triggered, called once when the key goes down
+    public void triggerJump() {
+        player.jumpTriggered = true;
+        // player2.jumpTriggered = true;
+    }
+
+    public void lagSpike() {
+        double x = 0;
+        for (int i = 0; i < 20000000; i++) {
+            x += Math.sin(i) * Math.cos(i);
+        }
+        System.out.println(x);
+    }
+}
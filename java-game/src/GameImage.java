@@ -1,16 +1,140 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import javax.imageio.ImageIO;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
+// Every image is decoded once and shared: all GameImage instances go through the
+// same cache keyed by path, so asking again for a path returns the same image.
+// preload decodes a list of paths in parallel, later loadImage calls only wait
+// for (or pick up) the result. Decoded images are converted to the screen's
+// format, ImageIO's own (4 byte ABGR, indexed...) only have slow draw loops.
 public class GameImage {
+    private static final ConcurrentHashMap<String, CompletableFuture<BufferedImage>> cache = new ConcurrentHashMap<>();
+    private static ExecutorService decoders;
+    static final AtomicInteger decodes = new AtomicInteger(); // images actually read from disk
+
+    static {
+        ImageIO.setUseCache(false); // decode in memory instead of through temporary files
+    }
+
     public BufferedImage loadImage(String path) {
+        CompletableFuture<BufferedImage> future = cache.get(path);
+        if (future == null) {
+            // not requested yet, decode it on this thread
+            CompletableFuture<BufferedImage> mine = new CompletableFuture<>();
+            future = cache.putIfAbsent(path, mine);
+            if (future == null) {
+                future = mine;
+                try {
+                    mine.complete(decode(path));
+                } catch (RuntimeException e) {
+                    mine.completeExceptionally(e);
+                }
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            cache.remove(path, future); // a failed load is tried again next time
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public BufferedImage[] loadImagesFromFolder(String folderPath, int n) {
+        BufferedImage[] images = new BufferedImage[n];
+        for (int i = 0; i < n; i++) {
+            images[i] = loadImage(folderPath + "/" + (int) (i + 1) + ".png");
+        }
+        return images;
+    }
+
+    // starts decoding all paths on the decoder threads and returns right away
+    public static void preload(Iterable<String> paths) {
+        ExecutorService pool = decoders();
+        for (String path : paths) {
+            cache.computeIfAbsent(path, p -> CompletableFuture.supplyAsync(() -> decode(p), pool));
+        }
+    }
+
+    // paths of the images loadImagesFromFolder(folderPath, n) will ask for
+    public static List<String> folderPaths(String folderPath, int n) {
+        List<String> paths = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            paths.add(folderPath + "/" + (i + 1) + ".png");
+        }
+        return paths;
+    }
+
+    // Images in the screen's native format are drawn with the fast blit loops,
+    // headless runs (benchmarks) fall back to a premultiplied ARGB image
+    public static BufferedImage createCompatibleImage(int w, int h) {
+        return createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+    }
+
+    public static BufferedImage createCompatibleImage(int w, int h, int transparency) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(w, h, transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB
+                    : BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(w, h, transparency);
+    }
+
+    public static BufferedImage toCompatible(BufferedImage image) {
+        BufferedImage compatible = createCompatibleImage(image.getWidth(), image.getHeight());
+        if (compatible.getColorModel().equals(image.getColorModel())
+                && compatible.getType() == image.getType()) {
+            return image;
+        }
+        Graphics2D g = compatible.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return compatible;
+    }
+
+    // Copy drawn at its final size (nearest neighbour, like drawImage does by
+    // default) and optionally mirrored, so drawing it every frame is a plain blit
+    public static BufferedImage scaledCopy(BufferedImage image, int w, int h, boolean mirrored) {
+        BufferedImage copy = createCompatibleImage(w, h);
+        Graphics2D g = copy.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        if (mirrored) {
+            g.drawImage(image, w, 0, -w, h, null);
+        } else {
+            g.drawImage(image, 0, 0, w, h, null);
+        }
+        g.dispose();
+        return copy;
+    }
+
+    private static BufferedImage decode(String path) {
         try {
-            var url = getClass().getResource("/" + path);
+            var url = GameImage.class.getResource("/" + path);
             if (url == null) {
                 throw new RuntimeException("Resource not Found : " + path);
             }
-            return ImageIO.read(url);
+            decodes.incrementAndGet();
+            BufferedImage image = ImageIO.read(url);
+            if (image == null) {
+                throw new RuntimeException("Not an image: " + path);
+            }
+            return toCompatible(image);
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -18,12 +142,17 @@ public class GameImage {
         }
     }
 
-    public BufferedImage[] loadImagesFromFolder(String folderPath, int n) {
-        BufferedImage[] images = new BufferedImage[n];
-        for (int i = 0; i < n; i++) {
-            images[i] = loadImage(folderPath + "/" + (int) (i + 1) + ".png");
+    private static synchronized ExecutorService decoders() {
+        if (decoders == null) {
+            // decoding is mostly CPU work, but two threads also hide the file reads on one core
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            decoders = Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "image-decoder");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
-        return images;
+        return decoders;
     }
 
 }
@@ -0,0 +1,105 @@
+// Startup options read from the command line, for example
+//   java -jar Game-1.0.0.jar --active-render
+//   java -jar Game-1.0.0.jar --map=world.jgm --chunk-radius=6 --chunk-budget-mb=16
+//   java -jar Game-1.0.0.jar --metrics-overlay --metrics-csv=frames.csv --metrics-interval=5
+//   java -jar Game-1.0.0.jar --sleep=busy --max-catch-up=3 --time-dilation
+//   java -jar Game-1.0.0.jar --scroll-blit --metrics-overlay
+//   java -jar Game-1.0.0.jar --pixel-scale=2
+//   java -jar Game-1.0.0.jar --software-raster
+//   java -jar Game-1.0.0.jar --fps=display --active-render
+public class GameOptions {
+    static final int DEFAULT_FPS = 90;
+    static final int FPS_UNCAPPED = 0; // next frame right after the last one
+    static final int FPS_DISPLAY = -1; // the refresh rate of the screen
+    // draw from the game loop into a page flipped BufferStrategy instead of
+    // asking the EDT to repaint a JPanel
+    boolean activeRendering = false;
+    String mapPath = "map1.json"; // JSON resource or binary .jgm file
+    // chunk streaming of binary maps, see ChunkStreamer
+    int chunkRadius = ChunkStreamer.DEFAULT_RADIUS;
+    long chunkMemoryBudget = ChunkStreamer.DEFAULT_MEMORY_BUDGET;
+    // frame metrics, see FrameMetrics. The overlay can also be toggled with F3
+    boolean metricsOverlay = false;
+    boolean metricsLog = false;
+    String metricsCsvPath = null;
+    long metricsIntervalNs = FrameMetrics.DEFAULT_INTERVAL_NS;
+    // pacing of the game loop, see LoopScheduler
+    LoopScheduler.SleepStrategy sleepStrategy = LoopScheduler.SleepStrategy.PARK_SPIN;
+    int maxCatchUp = LoopScheduler.DEFAULT_MAX_CATCH_UP;
+    boolean timeDilation = false;
+    // Frames per second, independent of the fixed 60 updates per second: every
+    // frame draws the world interpolated between the last two updates. Uncapped
+    // is meant for --active-render, where drawing itself paces the loop.
+    int fps = DEFAULT_FPS;
+    // draw the tiles by shifting the previous frame, see ScrollBlitRenderer
+    boolean scrollBlit = false;
+    // window pixels per framebuffer pixel: the same view of the world is drawn
+    // into an image of the window size divided by this and scaled up once, 1
+    // draws to the window
+    int pixelScale = 1;
+    // draw background, tiles and sprites with SoftwareRasterizer instead of Java2D
+    // (takes precedence over --scroll-blit)
+    boolean softwareRaster = false;
+
+    public static GameOptions parse(String[] args) {
+        GameOptions options = new GameOptions();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            String name = parts[0];
+            String value = parts.length > 1 ? parts[1] : "";
+            switch (name) {
+                case "--active-render" -> options.activeRendering = true;
+                case "--map" -> options.mapPath = required(name, value);
+                case "--chunk-radius" -> options.chunkRadius = Integer.parseInt(required(name, value));
+                case "--chunk-budget-mb" -> options.chunkMemoryBudget = Long.parseLong(required(name, value)) * 1024 * 1024;
+                case "--metrics-overlay" -> options.metricsOverlay = true;
+                case "--metrics-log" -> options.metricsLog = true;
+                case "--metrics-csv" -> options.metricsCsvPath = required(name, value);
+                case "--metrics-interval" -> options.metricsIntervalNs = (long) (Double.parseDouble(required(name, value)) * 1e9);
+                case "--sleep" -> options.sleepStrategy = switch (required(name, value)) {
+                    case "sleep" -> LoopScheduler.SleepStrategy.SLEEP;
+                    case "park" -> LoopScheduler.SleepStrategy.PARK_SPIN;
+                    case "busy" -> LoopScheduler.SleepStrategy.BUSY;
+                    default -> throw new RuntimeException("Unknown sleep strategy: " + value);
+                };
+                case "--max-catch-up" -> {
+                    options.maxCatchUp = Integer.parseInt(required(name, value));
+                    if (options.maxCatchUp < 1) {
+                        // 0 updates per frame would stop the game
+                        throw new RuntimeException("Max catch-up must be 1 or more: " + value);
+                    }
+                }
+                case "--time-dilation" -> options.timeDilation = true;
+                case "--fps" -> options.fps = switch (required(name, value)) {
+                    case "uncapped" -> FPS_UNCAPPED;
+                    case "display" -> FPS_DISPLAY;
+                    default -> {
+                        int fps = Integer.parseInt(value);
+                        if (fps < 1) {
+                            throw new RuntimeException("Frames per second must be 1 or more: " + value);
+                        }
+                        yield fps;
+                    }
+                };
+                case "--scroll-blit" -> options.scrollBlit = true;
+                case "--software-raster" -> options.softwareRaster = true;
+                case "--pixel-scale" -> {
+                    options.pixelScale = Integer.parseInt(required(name, value));
+                    if (options.pixelScale < 1) {
+                        throw new RuntimeException("Pixel scale must be 1 or more: " + value);
+                    }
+                }
+                default -> System.err.println("Unknown option ignored: " + arg);
+            }
+        }
+        return options;
+    }
+
+    // the value of an option that needs one, as in --map=world.jgm
+    private static String required(String name, String value) {
+        if (value.isEmpty()) {
+            throw new RuntimeException("Missing value for " + name + ", use " + name + "=<value>");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,166 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Runs the fixed-step simulation as fast as possible without opening a window and
+// reports how fast it went. Useful on machines without a display (CI, servers):
+//   java -cp Game-1.0.0.jar Headless --ticks=100000
+//   java -cp Game-1.0.0.jar Headless --generated=1000000 --bodies=5000
+// Options:
+//   --ticks=N       fixed updates to run (default 36000, ten minutes of game time)
+//   --map=PATH      map resource to load (default map1.json) or a binary .jgm map file
+//   --generated=N   use a generated map of about N tiles instead
+//   --bodies=N      PhysicsWorld bodies to spawn (default 0)
+//   --warmup=N      ticks run before measuring so the JIT has compiled the code (default 5000)
+//   --chunk-radius=N, --chunk-budget-mb=N   chunk streaming of .jgm maps, see ChunkStreamer
+public class Headless {
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int ticks = 36_000;
+        int warmupTicks = 5_000;
+        int generatedTiles = 0;
+        int bodies = 0;
+        String mapPath = "map1.json";
+        int chunkRadius = ChunkStreamer.DEFAULT_RADIUS;
+        long chunkMemoryBudget = ChunkStreamer.DEFAULT_MEMORY_BUDGET;
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            String value = parts.length > 1 ? parts[1] : "";
+            switch (parts[0]) {
+                case "--ticks" -> ticks = Integer.parseInt(value);
+                case "--warmup" -> warmupTicks = Integer.parseInt(value);
+                case "--map" -> mapPath = value;
+                case "--generated" -> generatedTiles = Integer.parseInt(value);
+                case "--bodies" -> bodies = Integer.parseInt(value);
+                case "--chunk-radius" -> chunkRadius = Integer.parseInt(value);
+                case "--chunk-budget-mb" -> chunkMemoryBudget = Long.parseLong(value) * 1024 * 1024;
+                default -> System.err.println("Unknown option ignored: " + arg);
+            }
+        }
+
+        Game game = generatedTiles > 0 ? new Game(generateMap(generatedTiles), 1200, 800)
+                : new Game(mapPath, 1200, 800);
+        if (game.chunkStreamer != null) {
+            game.chunkStreamer.configure(chunkRadius, chunkMemoryBudget);
+        }
+        for (int i = 0; i < bodies; i++) {
+            game.physicsWorld.add(100 + (i * 37) % 3000, -200 - (i % 50) * 40, 20, 30, i % 2 == 0 ? 60 : -60, 0);
+        }
+        System.out.printf("map: %d tiles, bodies: %d, ticks: %d (+%d warmup)%n", game.tileMap.tilesCount(),
+                bodies, ticks, warmupTicks);
+
+        for (int tick = 0; tick < warmupTicks; tick++) {
+            scriptedInput(game, tick);
+            game.update(Game.UPDATE_STEP_DURATION);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long[] stepNs = new long[ticks];
+        long gcCountBefore = gcCount(), gcTimeBefore = gcTimeMs();
+        Map<Long, Long> allocatedBefore = allocatedBytesByThread(threads);
+        long start = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++) {
+            scriptedInput(game, warmupTicks + tick);
+            long stepStart = System.nanoTime();
+            game.update(Game.UPDATE_STEP_DURATION);
+            stepNs[tick] = System.nanoTime() - stepStart;
+        }
+        long elapsedNs = System.nanoTime() - start;
+        long allocated = 0;
+        for (Map.Entry<Long, Long> thread : allocatedBytesByThread(threads).entrySet()) {
+            allocated += thread.getValue() - allocatedBefore.getOrDefault(thread.getKey(), 0L);
+        }
+
+        Arrays.sort(stepNs);
+        double seconds = elapsedNs / 1e9;
+        System.out.printf("ticks/second:     %.0f (%.1fx real time)%n", ticks / seconds,
+                ticks / seconds / Game.UPDATE_FREQUENCY);
+        System.out.printf("step time p50:    %.2f us%n", percentile(stepNs, 0.50) / 1e3);
+        System.out.printf("step time p99:    %.2f us%n", percentile(stepNs, 0.99) / 1e3);
+        System.out.printf("step time max:    %.2f us%n", stepNs[ticks - 1] / 1e3);
+        System.out.printf("allocated:        %.1f bytes/tick, %.2f MB/s%n", allocated / (double) ticks,
+                allocated / seconds / (1024 * 1024));
+        System.out.printf("gc:               %d collections, %d ms%n", gcCount() - gcCountBefore,
+                gcTimeMs() - gcTimeBefore);
+        System.out.printf("player ended at:  %.1f, %.1f%n", game.player.rect.xPos, game.player.rect.yPos);
+        if (game.chunkStreamer != null) {
+            System.out.println("chunk streaming:  " + game.chunkStreamer.stats());
+            game.chunkStreamer.shutdown();
+        }
+        game.physicsWorld.shutdown();
+    }
+
+    // Walks right and left for 4 seconds each, sprints half of the time and jumps
+    // every 1.5 seconds, the same for every run so results can be compared
+    static void scriptedInput(Game game, int tick) {
+        InputState inputs = game.inputs;
+        boolean right = (tick / 240) % 2 == 0;
+        inputs.movingRight = right;
+        inputs.movingLeft = !right;
+        inputs.isSprinting = (tick / 120) % 2 == 0;
+        if (tick % 90 == 0) {
+            game.triggerJump();
+        }
+    }
+
+    // floors of grass with a gap every 40 tiles, 60 tiles apart vertically
+    static MapData generateMap(int tiles) {
+        MapData map = new MapData();
+        map.tileSize = 32;
+        map.tiles = new ArrayList<>(tiles);
+        int width = Math.max(200, (int) Math.sqrt(tiles) * 4);
+        for (int i = 0, placed = 0; placed < tiles; i++) {
+            int x = i % width;
+            int y = 5 + (i / width) * 60;
+            if (x % 40 >= 37) {
+                continue;
+            }
+            TileData tile = new TileData();
+            tile.type = "grass";
+            tile.variant = 2;
+            tile.gridX = x;
+            tile.gridY = y;
+            map.tiles.add(tile);
+            placed++;
+        }
+        return map;
+    }
+
+    static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+
+    // Bytes allocated so far by every live thread (game, physics workers, chunk
+    // loader), by thread id. Threads that end between two calls are missed.
+    static Map<Long, Long> allocatedBytesByThread(com.sun.management.ThreadMXBean threads) {
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> byThread = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) {
+                byThread.put(ids[i], bytes[i]);
+            }
+        }
+        return byThread;
+    }
+
+    static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    static long gcTimeMs() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+}
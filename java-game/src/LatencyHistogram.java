@@ -0,0 +1,86 @@
+// Counts of nanosecond latencies in log-linear buckets, the way HdrHistogram
+// does it: every power of two range is split into SUB_BUCKETS equal buckets,
+// so a percentile is within about 3% of the real value whatever its size, and
+// recording is an index computation plus an increment. Values above MAX_VALUE
+// are counted as MAX_VALUE. Not thread safe, see FrameMetrics.
+public class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 6;
+    static final int HALF = 1 << (SUB_BUCKET_BITS - 1); // buckets per power of two
+    static final long MAX_VALUE = 1L << 40; // ~18 minutes
+
+    private final long[] counts = new long[indexOf(MAX_VALUE) + 1];
+    private long count, total, min = Long.MAX_VALUE, max;
+
+    public void record(long ns) {
+        long value = Math.max(0, Math.min(ns, MAX_VALUE));
+        counts[indexOf(value)]++;
+        count++;
+        total += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    // highest value of the bucket holding the given percentile (0..100), never above max()
+    public long valueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int index = 0; index < counts.length; index++) {
+            seen += counts[index];
+            if (seen >= rank) {
+                return Math.min(max, highestValueAt(index));
+            }
+        }
+        return max;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int index = 0; index < counts.length; index++) {
+            counts[index] += other.counts[index];
+        }
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        java.util.Arrays.fill(counts, 0);
+        count = total = max = 0;
+        min = Long.MAX_VALUE;
+    }
+
+    // values below 2 * HALF have a bucket each, above that a bucket covers 2^shift values
+    static int indexOf(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    static long highestValueAt(int index) {
+        int shift = Math.max(0, index / HALF - 1);
+        long sub = index - (long) shift * HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.concurrent.locks.LockSupport;
+
+// Paces the game loop: how many fixed updates a frame runs and how long it waits
+// before the next one.
+// Catching up is capped at maxCatchUp updates per frame. Without the cap a long
+// pause (GC, lagSpike, a window drag) makes the next frame run so many updates
+// that it is late again, the spiral of death. The game time over the cap is
+// dropped, or with time dilation the game also slows down while it can not keep
+// up (timeScale goes down every capped frame and creeps back to 1 after), which
+// plays as slow motion instead of a stutter.
+// Frames start on a fixed schedule (frameNs apart, not frameNs after the end of
+// the last one) and the wait for the next start is one of:
+//   SLEEP      Thread.sleep, wakes up late by the OS timer slack
+//   PARK_SPIN  LockSupport.parkNanos until SPIN_TAIL_NS before, then spins
+//   BUSY       spins the whole time, most precise, keeps a core busy
+public class LoopScheduler {
+    enum SleepStrategy { SLEEP, PARK_SPIN, BUSY }
+
+    static final int DEFAULT_MAX_CATCH_UP = 5;
+    static final long SPIN_TAIL_NS = 200_000;
+    static final double MIN_TIME_SCALE = 0.25;
+
+    final long stepNs;
+    final long frameNs;
+    int maxCatchUp = DEFAULT_MAX_CATCH_UP;
+    boolean timeDilation = false;
+    SleepStrategy sleepStrategy = SleepStrategy.PARK_SPIN;
+
+    double timeScale = 1; // game seconds per real second
+    private long accumulatorNs; // game time not simulated yet
+    private long lastNs, nextFrameNs;
+    private boolean started;
+    long frameGameNs; // game time the current frame advances by
+
+    // stats
+    long cappedFrames; // frames that hit maxCatchUp
+    long droppedGameNs; // game time thrown away by the cap
+
+    public LoopScheduler(double stepSeconds, long frameNs) {
+        this.stepNs = Math.round(stepSeconds * 1e9);
+        this.frameNs = frameNs;
+    }
+
+    // Start of a frame, returns the number of fixed updates to run
+    public int beginFrame(long nowNs) {
+        if (!started) {
+            started = true;
+            lastNs = nowNs;
+            nextFrameNs = nowNs;
+        }
+        frameGameNs = (long) ((nowNs - lastNs) * timeScale);
+        lastNs = nowNs;
+        accumulatorNs += frameGameNs;
+        long steps = accumulatorNs / stepNs;
+        if (steps > maxCatchUp) {
+            long dropped = (steps - maxCatchUp) * stepNs;
+            accumulatorNs -= dropped;
+            droppedGameNs += dropped;
+            cappedFrames++;
+            steps = maxCatchUp;
+            if (timeDilation) {
+                timeScale = Math.max(MIN_TIME_SCALE, timeScale * 0.8);
+            }
+        } else if (timeDilation && timeScale < 1) {
+            timeScale = Math.min(1, timeScale + 0.01);
+        }
+        accumulatorNs -= steps * stepNs;
+        return (int) steps;
+    }
+
+    // game seconds this frame advanced by, for animations
+    public double frameSeconds() {
+        return frameGameNs / 1e9;
+    }
+
+    // how far the game is between the last update and the next one, 0..1
+    public double interpolationFactor() {
+        return (double) accumulatorNs / stepNs;
+    }
+
+    // Waits for the start of the next frame and returns how late it woke up. A
+    // frame that ran past that start does not wait and returns -1, the schedule
+    // restarts from now instead of rushing to make up for it. With a frameNs of 0
+    // (uncapped) that is every frame.
+    public long waitForNextFrame() {
+        nextFrameNs += frameNs;
+        long now = System.nanoTime();
+        if (now >= nextFrameNs) {
+            nextFrameNs = now;
+            return -1;
+        }
+        switch (sleepStrategy) {
+            case SLEEP -> {
+                long left = nextFrameNs - now;
+                try {
+                    Thread.sleep(left / 1_000_000, (int) (left % 1_000_000));
+                } catch (InterruptedException e) {
+                }
+            }
+            case PARK_SPIN -> {
+                long left;
+                while ((left = nextFrameNs - System.nanoTime()) > SPIN_TAIL_NS) {
+                    LockSupport.parkNanos(left - SPIN_TAIL_NS);
+                }
+                spinUntil(nextFrameNs);
+            }
+            case BUSY -> spinUntil(nextFrameNs);
+        }
+        return Math.max(0, System.nanoTime() - nextFrameNs);
+    }
+
+    private static void spinUntil(long deadlineNs) {
+        while (System.nanoTime() < deadlineNs) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Binary map format, about 20 times smaller than the JSON maps and loaded by
+// memory mapping the file: load only reads the header and the chunk directory,
+// every chunk is decoded the first time the TileGrid touches it.
+//
+// Layout, big endian:
+//   int    MAGIC ("JGMP")
+//   short  VERSION
+//   short  tile size in pixels
+//   short  chunk size in tiles (TileGrid.CHUNK_SIZE)
+//   short  palette size, then per entry: short length + UTF-8 type, int variant
+//   int    chunk count, then per chunk: int chunkX, int chunkY, int data offset, short tiles
+//   chunk data: runs of (byte length - 1, short palette index) covering the chunk
+//          row by row, palette entries are numbered from 1, index 0 is an empty cell
+//
+// Converting a JSON map (from the java-game folder):
+//   java -cp out:lib/gson.jar MapFile map1.json map1.jgm
+public class MapFile {
+    static final String EXTENSION = ".jgm";
+    static final int MAGIC = 0x4A474D50; // "JGMP"
+    static final short VERSION = 1;
+    private static final int DIRECTORY_ENTRY_BYTES = 4 + 4 + 4 + 2;
+
+    private final ByteBuffer data;
+    private final short[] paletteIds; // palette index -> TileVariant id of the loading registry
+    private final int directoryStart;
+    final int tileSize;
+    final int chunkCount;
+    // chunks are decoded on the chunk loader, the game thread and the physics workers
+    final AtomicInteger chunksDecoded = new AtomicInteger();
+
+    private MapFile(ByteBuffer data, TileVariantRegistry registry) {
+        this.data = data;
+        if (data.getInt() != MAGIC) {
+            throw new RuntimeException("Not a map file");
+        }
+        short version = data.getShort();
+        if (version != VERSION) {
+            throw new RuntimeException("Unsupported map file version " + version);
+        }
+        tileSize = data.getShort();
+        int chunkSize = data.getShort();
+        if (chunkSize != TileGrid.CHUNK_SIZE) {
+            throw new RuntimeException("Map file chunk size " + chunkSize + " is not " + TileGrid.CHUNK_SIZE);
+        }
+        int paletteSize = data.getShort();
+        paletteIds = new short[paletteSize + 1];
+        for (int i = 1; i <= paletteSize; i++) {
+            byte[] type = new byte[data.getShort()];
+            data.get(type);
+            String typeName = new String(type, StandardCharsets.UTF_8);
+            int variant = data.getInt();
+            TileVariant tileVariant = registry.get(typeName, variant);
+            if (tileVariant == null) {
+                throw new RuntimeException("TileVariant not regestered: " + typeName + " variant " + variant);
+            }
+            paletteIds[i] = tileVariant.id;
+        }
+        chunkCount = data.getInt();
+        directoryStart = data.position();
+    }
+
+    // Maps the file and adds all of its chunks undecoded to the map's grid
+    public static MapFile load(Path path, TileMap tileMap) {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read map " + path, e);
+        }
+        MapFile file = new MapFile(data, tileMap.registry);
+        tileMap.setTileSize(file.tileSize);
+        tileMap.source = file;
+        for (int entry = 0; entry < file.chunkCount; entry++) {
+            int at = file.directoryStart + entry * DIRECTORY_ENTRY_BYTES;
+            tileMap.grid.addLazyChunk(file, entry, data.getInt(at), data.getInt(at + 4), data.getShort(at + 12));
+        }
+        return file;
+    }
+
+    // Only absolute reads, so several threads can decode chunks at the same time
+    TileChunk decodeChunk(int entry) {
+        int at = directoryStart + entry * DIRECTORY_ENTRY_BYTES;
+        int chunkX = data.getInt(at);
+        int chunkY = data.getInt(at + 4);
+        int offset = data.getInt(at + 8);
+        short[] cells = new short[TileChunk.CELLS];
+        int cell = 0, count = 0;
+        while (cell < cells.length) {
+            int length = (data.get(offset) & 0xFF) + 1;
+            int paletteIndex = data.getShort(offset + 1);
+            offset += 3;
+            if (cell + length > cells.length || paletteIndex < 0 || paletteIndex >= paletteIds.length) {
+                throw new RuntimeException("Corrupt map file, chunk " + chunkX + ", " + chunkY);
+            }
+            short id = paletteIds[paletteIndex];
+            for (int end = cell + length; cell < end; cell++) {
+                cells[cell] = id;
+            }
+            if (id != TileGrid.EMPTY) {
+                count += length;
+            }
+        }
+        chunksDecoded.incrementAndGet();
+        return new TileChunk(chunkX, chunkY, cells, count);
+    }
+
+    // Writes the grid, its variant ids are looked up in the registry for the palette
+    public static void write(Path path, int tileSize, TileGrid grid, TileVariantRegistry registry)
+            throws IOException {
+        List<TileChunk> chunks = new ArrayList<>(grid.chunkCount());
+        grid.forEachChunk(chunk -> {
+            if (chunk.count > 0) {
+                chunks.add(chunk);
+            }
+        });
+        chunks.sort(Comparator.<TileChunk>comparingInt(c -> c.chunkY).thenComparingInt(c -> c.chunkX));
+
+        // every registered variant gets a palette entry, its index is its id
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        header.writeShort(tileSize);
+        header.writeShort(TileGrid.CHUNK_SIZE);
+        header.writeShort(registry.size());
+        for (short id = 1; id <= registry.size(); id++) {
+            TileVariant variant = registry.byId(id);
+            byte[] type = variant.type.getBytes(StandardCharsets.UTF_8);
+            header.writeShort(type.length);
+            header.write(type);
+            header.writeInt(variant.variant);
+        }
+        header.writeInt(chunks.size());
+
+        byte[][] encoded = new byte[chunks.size()][];
+        long dataSize = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            encoded[i] = encodeRuns(chunks.get(i).cells);
+            dataSize += encoded[i].length;
+        }
+        long directorySize = (long) chunks.size() * DIRECTORY_ENTRY_BYTES;
+        if (headerBytes.size() + directorySize + dataSize > Integer.MAX_VALUE) {
+            throw new RuntimeException("Map too big for a single map file");
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            headerBytes.writeTo(out);
+            int offset = (int) (headerBytes.size() + directorySize);
+            for (int i = 0; i < chunks.size(); i++) {
+                TileChunk chunk = chunks.get(i);
+                out.writeInt(chunk.chunkX);
+                out.writeInt(chunk.chunkY);
+                out.writeInt(offset);
+                out.writeShort(chunk.count);
+                offset += encoded[i].length;
+            }
+            for (byte[] chunk : encoded) {
+                out.write(chunk);
+            }
+        }
+    }
+
+    private static byte[] encodeRuns(short[] cells) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int cell = 0; cell < cells.length;) {
+            short id = cells[cell];
+            int length = 1;
+            while (cell + length < cells.length && cells[cell + length] == id && length < 256) {
+                length++;
+            }
+            out.writeByte(length - 1);
+            out.writeShort(id);
+            cell += length;
+        }
+        return bytes.toByteArray();
+    }
+
+    // JSON map -> binary map
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: MapFile <map.json> <map" + EXTENSION + ">");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        Converter converter = new Converter();
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(args[0]))) {
+            Maploader.streamMap(reader, converter);
+        }
+        write(Path.of(args[1]), converter.tileSize, converter.grid, converter.registry);
+        System.out.printf("%d tiles, %d chunks, %d -> %d bytes in %.0f ms%n", converter.grid.tilesCount,
+                converter.grid.chunkCount(), Files.size(Path.of(args[0])), Files.size(Path.of(args[1])),
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    // Collects a JSON map without images, every variant it meets is registered
+    static class Converter implements TileSink {
+        final TileVariantRegistry registry = new TileVariantRegistry();
+        final TileGrid grid = new TileGrid();
+        int tileSize = 32;
+
+        @Override
+        public void setTileSize(int tileSize) {
+            this.tileSize = tileSize;
+        }
+
+        @Override
+        public void placeTile(String type, int variant, int gridX, int gridY) {
+            TileVariant tileVariant = registry.get(type, variant);
+            if (tileVariant == null) {
+                registry.register(type, variant, null);
+                tileVariant = registry.get(type, variant);
+            }
+            grid.setTile(gridX, gridY, tileVariant.id);
+        }
+    }
+}
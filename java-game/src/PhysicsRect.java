@@ -6,9 +6,103 @@ public class PhysicsRect extends Rect {
     // Every Collision logic is based the the perspective of the Physics Rect who is
     // calling these functions
     public boolean intersects(PhysicsRect r) {
-        return this.yPos + this.h > r.yPos &&
-                this.xPos < r.xPos + r.w &&
-                this.yPos < r.yPos + r.h &&
-                this.xPos + this.w > r.xPos;
+        return intersects(this.xPos, this.yPos, this.w, this.h, r.xPos, r.yPos, r.w, r.h);
+    }
+
+    public static boolean intersects(double x1, double y1, int w1, int h1, double x2, double y2, int w2, int h2) {
+        return y1 + h1 > y2 &&
+                x1 < x2 + w2 &&
+                y1 < y2 + h2 &&
+                x1 + w1 > x2;
+    }
+
+    // Swept movement against the tile grid. Instead of moving first and then looking
+    // for overlaps, only the grid cells between the current and the target position
+    // are checked and the rect stops flush against the first solid one, so no speed
+    // is high enough to tunnel through a tile. Returns true if the move was blocked.
+    public boolean sweepX(TileMap map, double dx) {
+        double allowed = sweepX(map.grid, map.tileSize, xPos, yPos, w, h, dx);
+        xPos += allowed;
+        return allowed != dx;
+    }
+
+    public boolean sweepY(TileMap map, double dy) {
+        double allowed = sweepY(map.grid, map.tileSize, xPos, yPos, w, h, dy);
+        yPos += allowed;
+        return allowed != dy;
+    }
+
+    // Returns how far (out of dx) a rect at x, y can move horizontally. Cells the
+    // rect already overlaps are ignored, the rect can only be stopped by cells ahead of it.
+    public static double sweepX(TileGrid grid, int tileSize, double x, double y, int w, int h, double dx) {
+        if (dx == 0) {
+            return 0;
+        }
+        int firstRow = (int) Math.floor(y / tileSize);
+        int lastRow = (int) Math.ceil((y + h) / tileSize) - 1;
+        if (dx > 0) {
+            double right = x + w;
+            int firstCol = (int) Math.ceil(right / tileSize);
+            int lastCol = (int) Math.ceil((right + dx) / tileSize) - 1;
+            for (int col = firstCol; col <= lastCol; col++) {
+                if (anySolidInColumn(grid, col, firstRow, lastRow)) {
+                    return col * tileSize - right;
+                }
+            }
+        } else {
+            int firstCol = (int) Math.floor(x / tileSize) - 1;
+            int lastCol = (int) Math.floor((x + dx) / tileSize);
+            for (int col = firstCol; col >= lastCol; col--) {
+                if (anySolidInColumn(grid, col, firstRow, lastRow)) {
+                    return (col + 1) * tileSize - x;
+                }
+            }
+        }
+        return dx;
+    }
+
+    public static double sweepY(TileGrid grid, int tileSize, double x, double y, int w, int h, double dy) {
+        if (dy == 0) {
+            return 0;
+        }
+        int firstCol = (int) Math.floor(x / tileSize);
+        int lastCol = (int) Math.ceil((x + w) / tileSize) - 1;
+        if (dy > 0) {
+            double bottom = y + h;
+            int firstRow = (int) Math.ceil(bottom / tileSize);
+            int lastRow = (int) Math.ceil((bottom + dy) / tileSize) - 1;
+            for (int row = firstRow; row <= lastRow; row++) {
+                if (anySolidInRow(grid, row, firstCol, lastCol)) {
+                    return row * tileSize - bottom;
+                }
+            }
+        } else {
+            int firstRow = (int) Math.floor(y / tileSize) - 1;
+            int lastRow = (int) Math.floor((y + dy) / tileSize);
+            for (int row = firstRow; row >= lastRow; row--) {
+                if (anySolidInRow(grid, row, firstCol, lastCol)) {
+                    return (row + 1) * tileSize - y;
+                }
+            }
+        }
+        return dy;
+    }
+
+    private static boolean anySolidInColumn(TileGrid grid, int col, int firstRow, int lastRow) {
+        for (int row = firstRow; row <= lastRow; row++) {
+            if (grid.isSolid(col, row)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean anySolidInRow(TileGrid grid, int row, int firstCol, int lastCol) {
+        for (int col = firstCol; col <= lastCol; col++) {
+            if (grid.isSolid(col, row)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -1,17 +1,23 @@
-import java.util.List;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 
 public class PhysicsTilesAround {
-    List<OnGridTile> tiles = new ArrayList<>();
-    List<OnGridTile> debugTiles = new ArrayList<>();
-    List<OnGridTile> intersectedTiles = new ArrayList<>();
-    int tilesCount = 0;
+    // Every array below is reused between updates, only the first *Count entries are valid
+    // and the OnGridTile objects in them are only valid until the next update
+    OnGridTile[] tiles = new OnGridTile[0];
+    OnGridTile[] debugTiles = new OnGridTile[0];
+    int tilesCount = 0, debugTilesCount = 0;
     int tilesCountY, tilesCountX;
+    // search window of the last update in grid coordinates (inclusive), for callers
+    // that prefer to walk the grid cells themselves through map.tileAt
+    int startX, endX, startY, endY;
+    // debugTiles is only filled when this is on
+    boolean collectDebugTiles = false;
     PhysicsEntity entity;
     int tileSize;
-    int array[];
     TileMap map;
+    private OnGridTile[] tilePool = new OnGridTile[0];
+    private OnGridTile[] emptyCellPool = new OnGridTile[0];
 
     public PhysicsTilesAround(PhysicsEntity entity, TileMap map, int tileSize) {
         this.entity = entity;
@@ -20,31 +26,57 @@ public class PhysicsTilesAround {
     }
 
     public void updatePhysicsTilesAround() {
-        tiles.clear();
-        debugTiles.clear();
+        tilesCount = 0;
+        debugTilesCount = 0;
         int leftTile = (int) Math.floor(entity.rect.xPos / tileSize);
         int rightTile = (int) Math.floor((entity.rect.xPos + entity.rect.w - 1) / tileSize);
         int topTile = (int) Math.floor(entity.rect.yPos / tileSize);
         int bottomTile = (int) Math.floor((entity.rect.yPos + entity.rect.h - 1) / tileSize);
 
         // Expanding collision search area
-        int startX = leftTile - 2;
-        int endX = rightTile + 2;
-        int startY = topTile - 2;
-        int endY = bottomTile + 2;
+        startX = leftTile - 2;
+        endX = rightTile + 2;
+        startY = topTile - 2;
+        endY = bottomTile + 2;
+        tilesCountX = endX - startX + 1;
+        tilesCountY = endY - startY + 1;
 
+        int windowCells = tilesCountX * tilesCountY;
+        if (tiles.length < windowCells) {
+            // only happens when the entity is bigger than ever before
+            tiles = new OnGridTile[windowCells];
+            debugTiles = new OnGridTile[windowCells];
+            tilePool = grownPool(tilePool, windowCells);
+            emptyCellPool = grownPool(emptyCellPool, windowCells);
+        }
+        int emptyCells = 0;
         for (int y = startY; y <= endY; y++) {
             for (int x = startX; x <= endX; x++) {
-                OnGridTile tile = map.ongridTilesMap.get(x + "," + y);
-                if (tile != null) {
-                    tiles.add(tile);
-                    debugTiles.add(tile);
-                } else {
-                    debugTiles.add(new OnGridTile(null, x * tileSize, y * tileSize, tileSize, tileSize));
+                short id = map.tileAt(x, y);
+                if (id != TileGrid.EMPTY) {
+                    OnGridTile tile = tilePool[tilesCount];
+                    tile.place(map.registry.byId(id), x, y, tileSize);
+                    tiles[tilesCount++] = tile;
+                    if (collectDebugTiles) {
+                        debugTiles[debugTilesCount++] = tile;
+                    }
+                } else if (collectDebugTiles) {
+                    OnGridTile emptyCell = emptyCellPool[emptyCells++];
+                    emptyCell.place(null, x, y, tileSize);
+                    debugTiles[debugTilesCount++] = emptyCell;
                 }
 
             }
         }
 
     }
+
+    private OnGridTile[] grownPool(OnGridTile[] pool, int size) {
+        int oldLength = pool.length;
+        pool = Arrays.copyOf(pool, size);
+        for (int i = oldLength; i < size; i++) {
+            pool[i] = new OnGridTile(null, 0, 0, tileSize, tileSize);
+        }
+        return pool;
+    }
 }
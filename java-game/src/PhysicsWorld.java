@@ -0,0 +1,188 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Simple physics bodies (future enemies, projectiles, ...) stored as one array per
+// field instead of one object per body, so stepping thousands of them walks
+// memory linearly. Every body only reads the tile grid and writes its own slots,
+// which lets the step be split across threads and still give exactly the same
+// result whatever the thread count is. Body vs body contacts are found afterwards
+// on the calling thread through a SpatialHash.
+public class PhysicsWorld implements SpatialHash.PairListener {
+    static final int BODIES_PER_TASK = 512; // below this a fork costs more than it saves
+
+    final TileMap map;
+    final double gravity; // px / second square
+    final double terminalVelocity;
+    final ForkJoinPool pool;
+    SpatialHash spatialHash;
+    boolean bodyCollisions = true;
+    int largestBodySize;
+    double interpolationFactor = 1; // bodies are drawn between prevX/Y and xPos/yPos, see updateInterpolation
+
+    int count;
+    double[] xPos = new double[64], yPos = new double[64];
+    double[] prevX = new double[64], prevY = new double[64];
+    double[] velocityX = new double[64], velocityY = new double[64];
+    int[] w = new int[64], h = new int[64];
+    boolean[] onGround = new boolean[64];
+
+    public PhysicsWorld(TileMap map, double gravity, double terminalVelocity) {
+        this(map, gravity, terminalVelocity, Runtime.getRuntime().availableProcessors());
+    }
+
+    public PhysicsWorld(TileMap map, double gravity, double terminalVelocity, int threads) {
+        this.map = map;
+        this.gravity = gravity;
+        this.terminalVelocity = terminalVelocity;
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    // returns the id of the new body, ids are indexes into the arrays
+    public int add(double x, double y, int width, int height, double vx, double vy) {
+        if (count == xPos.length) {
+            grow(count * 2);
+        }
+        int id = count++;
+        xPos[id] = prevX[id] = x;
+        yPos[id] = prevY[id] = y;
+        w[id] = width;
+        h[id] = height;
+        velocityX[id] = vx;
+        velocityY[id] = vy;
+        onGround[id] = false;
+        largestBodySize = Math.max(largestBodySize, Math.max(width, height));
+        return id;
+    }
+
+    // Removes a body by moving the last one into its slot. Returns the old id of
+    // the moved body, which is now known as id (id itself when the last body was
+    // removed), so callers holding ids can follow it.
+    public int remove(int id) {
+        if (id < 0 || id >= count) {
+            throw new RuntimeException("No body " + id);
+        }
+        int last = --count;
+        xPos[id] = xPos[last];
+        yPos[id] = yPos[last];
+        prevX[id] = prevX[last];
+        prevY[id] = prevY[last];
+        velocityX[id] = velocityX[last];
+        velocityY[id] = velocityY[last];
+        w[id] = w[last];
+        h[id] = h[last];
+        onGround[id] = onGround[last];
+        if (spatialHash != null) {
+            spatialHash.removeBody(id, last);
+        }
+        return last;
+    }
+
+    public void step(double dt) {
+        if (pool == null || count <= BODIES_PER_TASK) {
+            stepRange(0, count, dt);
+        } else {
+            pool.invoke(new StepTask(0, count, dt));
+        }
+        if (bodyCollisions) {
+            if (spatialHash == null || spatialHash.cellSize < largestBodySize) {
+                // a body bigger than a cell would be missed by the neighbour search
+                spatialHash = new SpatialHash(map.tileSize, largestBodySize);
+            }
+            spatialHash.update(this);
+            spatialHash.forEachOverlappingPair(this, this);
+        }
+    }
+
+    // Two bodies walking into each other both turn around
+    @Override
+    public void onPair(int a, int b) {
+        int left = xPos[a] <= xPos[b] ? a : b;
+        int right = left == a ? b : a;
+        velocityX[left] = -Math.abs(velocityX[left]);
+        velocityX[right] = Math.abs(velocityX[right]);
+    }
+
+    void stepRange(int from, int to, double dt) {
+        TileGrid grid = map.grid;
+        int tileSize = map.tileSize;
+        for (int i = from; i < to; i++) {
+            prevX[i] = xPos[i];
+            prevY[i] = yPos[i];
+
+            double dx = velocityX[i] * dt;
+            double allowedX = PhysicsRect.sweepX(grid, tileSize, xPos[i], yPos[i], w[i], h[i], dx);
+            xPos[i] += allowedX;
+            if (allowedX != dx) {
+                velocityX[i] = -velocityX[i]; // walk back when hitting a wall
+            }
+
+            double initialVelocityY = velocityY[i];
+            velocityY[i] = Math.min(velocityY[i] + gravity * dt, terminalVelocity);
+            double dy = (initialVelocityY + velocityY[i]) / 2 * dt;
+            double allowedY = PhysicsRect.sweepY(grid, tileSize, xPos[i], yPos[i], w[i], h[i], dy);
+            yPos[i] += allowedY;
+            onGround[i] = false;
+            if (allowedY != dy) {
+                onGround[i] = dy > 0;
+                velocityY[i] = 0;
+            }
+        }
+    }
+
+    public void updateInterpolation(double ipf) {
+        interpolationFactor = ipf;
+    }
+
+    public void writeSnapshot(RenderSnapshot snapshot) {
+        snapshot.ensureBodyCapacity(count);
+        double ipf = interpolationFactor;
+        for (int i = 0; i < count; i++) {
+            snapshot.bodyX[i] = prevX[i] + (xPos[i] - prevX[i]) * ipf;
+            snapshot.bodyY[i] = prevY[i] + (yPos[i] - prevY[i]) * ipf;
+        }
+        System.arraycopy(w, 0, snapshot.bodyW, 0, count);
+        System.arraycopy(h, 0, snapshot.bodyH, 0, count);
+        snapshot.bodyCount = count;
+    }
+
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private void grow(int capacity) {
+        xPos = Arrays.copyOf(xPos, capacity);
+        yPos = Arrays.copyOf(yPos, capacity);
+        prevX = Arrays.copyOf(prevX, capacity);
+        prevY = Arrays.copyOf(prevY, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+        w = Arrays.copyOf(w, capacity);
+        h = Arrays.copyOf(h, capacity);
+        onGround = Arrays.copyOf(onGround, capacity);
+    }
+
+    private class StepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final int from, to;
+        final double dt;
+
+        StepTask(int from, int to, double dt) {
+            this.from = from;
+            this.to = to;
+            this.dt = dt;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BODIES_PER_TASK) {
+                stepRange(from, to, dt);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new StepTask(from, mid, dt), new StepTask(mid, to, dt));
+        }
+    }
+}
@@ -1,7 +1,4 @@
 import java.awt.image.BufferedImage;
-import java.util.EnumMap;
-import java.util.Map;
-import java.awt.*;
 
 public class Player extends PhysicsEntity {
     // constants
@@ -15,16 +12,14 @@ public class Player extends PhysicsEntity {
     double imageScalingFactor = 1.0;
     int spriteW, spriteH;
     PhysicsTilesAround physicsTilesAround;
-    OnGridTile topTile = null;
+    final ContactManifold contacts; // what this step's collisions touched
+    Rect topTile = null; // copy, the tiles of physicsTilesAround are reused every update
     double topMostTileY;
 
-    // Player Animation States
-    Animation currentAnimation;
-    Map<PlayerAnimState, AnimationPlayer> animPlayerMap = new EnumMap<PlayerAnimState, AnimationPlayer>(
-            PlayerAnimState.class);
-    AnimationPlayer currAnimationPlayer;
-    PlayerAnimState currAnimState;
-    PlayerAnimState nextAnimState;
+    // Player Animation States, shared by all players (see createAnimationStateMachine)
+    AnimationStateMachine<Player> animations;
+    int animState; // PlayerAnimState ordinal
+    double animTime; // seconds since animState was entered
     boolean lockAnimationThisFrame = false;
 
     // Player states
@@ -46,28 +41,26 @@ public class Player extends PhysicsEntity {
 
     int remainingJumps = 2;
     int airTimeFrames = 0;
-    App game;
+    Game game;
 
     // Temporary test variables
     int counter = 0;
     double dy = 0, dyAccumulator = 0;
 
-    public Player(App game, double x, double y, int w, int h) {
+    public Player(Game game, double x, double y, int w, int h) {
         super(x, y, w, h);
         this.velocityY = 0.0;
         this.game = game;
-        this.currAnimState = PlayerAnimState.IDLE;
-        if (animPlayerMap.isEmpty()) {
-            setAnimationPlayerMap();
-        }
-        this.currAnimationPlayer = animPlayerMap.get(PlayerAnimState.IDLE);
+        this.contacts = new ContactManifold(rect);
+        this.animations = game.playerAnimations;
+        this.animState = PlayerAnimState.IDLE.ordinal();
         this.isMoving = false;
         this.speedFactor = 1.0;
         this.facingRight = true;
         this.spriteW = 32;
         this.spriteH = 32;
         this.imageScalingFactor = 2;
-        sprite = currAnimationPlayer.getCurrentFrame(game.deltaTime);
+        sprite = animations.frame(animState, animTime);
         updateAnimationRenderOffset();
         // this.renderOffset.x = (int) ((this.rect.w - (spriteW + renderOffset.w)) / 2);
         // this.renderOffset.y = (int) ((this.rect.h - (spriteH + renderOffset.h)));
@@ -77,68 +70,43 @@ public class Player extends PhysicsEntity {
         this.jumpTransitionVelocity = terminalVelocity * 0.3;
     }
 
-    public void setAnimationPlayerMap() {
-        animPlayerMap.put(PlayerAnimState.IDLE, new AnimationPlayer(game.playerIdle));
-        animPlayerMap.put(PlayerAnimState.RUN, new AnimationPlayer(game.playerRun));
-        animPlayerMap.put(PlayerAnimState.WALK, new AnimationPlayer(game.playerWalk));
-        animPlayerMap.put(PlayerAnimState.WALL_CLIMB, new AnimationPlayer(game.playerWallClimb));
-        animPlayerMap.put(PlayerAnimState.WALL_CONTACT, new AnimationPlayer(game.playerWallContact));
-        animPlayerMap.put(PlayerAnimState.WALL_JUMP, new AnimationPlayer(game.playerWallJump));
-        animPlayerMap.put(PlayerAnimState.WALL_SLIDE, new AnimationPlayer(game.playerWallSlide));
-        animPlayerMap.put(PlayerAnimState.JUMP_START, new AnimationPlayer(game.playerJumpStart));
-        animPlayerMap.put(PlayerAnimState.JUMP_FALL, new AnimationPlayer(game.playerJumpFall));
-        animPlayerMap.put(PlayerAnimState.JUMP_TRANSITION, new AnimationPlayer(game.playerJumpTransition));
+    // States are added in PlayerAnimState order, so a state's index is its ordinal.
+    // The transitions are tried top to bottom, the last one always holds.
+    static AnimationStateMachine<Player> createAnimationStateMachine(Game game) {
+        AnimationStateMachine<Player> machine = new AnimationStateMachine<>();
+        for (PlayerAnimState state : PlayerAnimState.values()) {
+            machine.addState(state.name(), switch (state) {
+                case IDLE -> game.playerIdle;
+                case WALK -> game.playerWalk;
+                case RUN -> game.playerRun;
+                case JUMP_START -> game.playerJumpStart;
+                case JUMP_FALL -> game.playerJumpFall;
+                case JUMP_TRANSITION -> game.playerJumpTransition;
+                case WALL_SLIDE -> game.playerWallSlide;
+                case WALL_CONTACT -> game.playerWallContact;
+                case WALL_JUMP -> game.playerWallJump;
+                case WALL_CLIMB -> game.playerWallClimb;
+            });
+        }
+        int any = AnimationStateMachine.ANY;
+        machine.addTransition(any, PlayerAnimState.WALL_CLIMB.ordinal(), p -> p.wallState == WallState.CLIMBING);
+        machine.addTransition(any, PlayerAnimState.WALL_CONTACT.ordinal(), p -> p.wallState == WallState.HOLDING);
+        machine.addTransition(any, PlayerAnimState.WALL_SLIDE.ordinal(), p -> p.wallState == WallState.SLIDING);
+        machine.addTransition(any, PlayerAnimState.JUMP_TRANSITION.ordinal(), p -> p.onAir && p.onJumpTransition);
+        machine.addTransition(any, PlayerAnimState.JUMP_START.ordinal(), p -> p.onAir && p.isJumping);
+        machine.addTransition(any, PlayerAnimState.JUMP_FALL.ordinal(), p -> p.onAir);
+        machine.addTransition(any, PlayerAnimState.RUN.ordinal(), p -> p.isMoving && p.game.inputs.isSprinting);
+        machine.addTransition(any, PlayerAnimState.WALK.ordinal(), p -> p.isMoving);
+        machine.addTransition(any, PlayerAnimState.IDLE.ordinal(), p -> true);
+        return machine;
     }
 
     boolean canWallClimb() {
-        if (!isTouchingSideWall || onGround)
-            return false;
-        double topMostTileYpos = Double.MAX_VALUE;
-        for (OnGridTile tile : physicsTilesAround.tiles) {
-            if (tile == null || tile.tileVariant == null)
-                continue;
-
-            if (facingRight) {
-                if (tile.rect.xPos > this.rect.xPos && tile.rect.yPos < topMostTileYpos) {
-                    topMostTileYpos = tile.rect.yPos;
-                }
-            } else {
-                if (tile.rect.xPos < this.rect.xPos && tile.rect.yPos < topMostTileYpos) {
-                    topMostTileYpos = tile.rect.yPos;
-                }
-            }
-
-        }
-        if (isTouchingSideWall && (this.rect.yPos <= topMostTileYpos + 32 && this.rect.yPos >= topMostTileYpos + 16)) {
-            return true;
-        } else
-            return false;
+        return contacts.canClimbLedge(facingRight);
     }
 
     boolean canWallInteract() {
-        if (onGround || !isTouchingSideWall) {
-            return false;
-        }
-        double topMostTileYpos = Double.MAX_VALUE;
-        for (OnGridTile tile : physicsTilesAround.tiles) {
-            if (tile == null || tile.tileVariant == null)
-                continue;
-
-            if (facingRight) {
-                if (tile.rect.xPos > this.rect.xPos && tile.rect.yPos < topMostTileYpos) {
-                    topMostTileYpos = tile.rect.yPos;
-                }
-            } else {
-                if (tile.rect.xPos < this.rect.xPos && tile.rect.yPos < topMostTileYpos) {
-                    topMostTileYpos = tile.rect.yPos;
-                }
-            }
-        }
-        if (topMostTileYpos <= this.rect.yPos - 32) {
-            return true;
-        } else {
-            return false;
-        }
+        return contacts.canHoldWall(facingRight);
     }
 
     public void jump() {
@@ -199,11 +167,11 @@ public class Player extends PhysicsEntity {
         // "Transition :" + onJumpTransition+ "," + velocityY);
         // moving in X direction
         prevX = rect.xPos;
-        rect.xPos += velocityX * speedFactor * moving[0] * dt;
 
-        // resolving X collision
+        // moving and resolving X collision
+        contacts.reset(physicsTilesAround);
         isTouchingSideWall = false;
-        resolveCollisionX();
+        resolveCollisionX(velocityX * speedFactor * moving[0] * dt);
 
         // moving in y direction--
         // (velocityY * moving[1]) needs to be added to move up and down
@@ -211,42 +179,31 @@ public class Player extends PhysicsEntity {
         if (wallState.equals(WallState.CLIMBING)) {
             velocityY = 0;
         }
-        // calculating displacement using initial velocity of the frame
-        dy = velocityY * dt / 2;
-        rect.yPos += dy;
-        dyAccumulator += dy;
-        resolveCollisionY();
-
-        onGround = false;
-
-        prevY = rect.yPos;
-        // calculating displacement using final velocity of the frame
+        double initialVelocityY = velocityY;
         velocityY = Math.min(velocityY + (this.game.ACCLN_DUE_TO_GRAVITY * fallFactor * gravityFactor * dt),
                 terminalVelocity);
         if (wallState.equals(WallState.CLIMBING)) {
             velocityY = 0;
         }
-        dy = velocityY * dt / 2;
-        rect.yPos += dy;
+        // displacement using the average of the initial and final velocity of the frame,
+        // the swept collision can do it in one move without tunnelling through tiles
+        dy = (initialVelocityY + velocityY) / 2 * dt;
         dyAccumulator += dy;
 
-        // resolving y collision
-        resolveCollisionY();
+        // moving and resolving y collision
+        resolveCollisionY(dy);
         if (canWallClimb() && wallState != WallState.CLIMBING) {
             isClimbing = true;
-            topMostTileY = Double.MAX_VALUE;
-            // finding toptile once only
-            for (OnGridTile tile : physicsTilesAround.tiles) {
-                if (tile == null || tile.tileVariant == null) {
-                    continue;
-                }
-                if (facingRight && tile.rect.xPos > rect.xPos && tile.rect.yPos < topMostTileY) {
-                    topMostTileY = tile.rect.yPos;
-                    topTile = tile;
-                } else if (!facingRight && tile.rect.xPos < rect.xPos && tile.rect.yPos < topMostTileY) {
-                    topMostTileY = tile.rect.yPos;
-                    topTile = tile;
+            topMostTileY = contacts.ledgeY(facingRight);
+            OnGridTile ledge = contacts.ledgeTile(facingRight);
+            if (ledge != null) {
+                if (topTile == null) {
+                    topTile = new Rect(0, 0, 0, 0);
                 }
+                topTile.xPos = ledge.rect.xPos;
+                topTile.yPos = ledge.rect.yPos;
+                topTile.w = ledge.rect.w;
+                topTile.h = ledge.rect.h;
             }
         }
         if (isClimbing) {
@@ -257,9 +214,9 @@ public class Player extends PhysicsEntity {
             if (topTile != null && climbTimer >= 1) {
                 rect.yPos = topMostTileY - rect.h;
                 if (facingRight) {
-                    rect.xPos = topTile.rect.left() + 10;
+                    rect.xPos = topTile.left() + 10;
                 } else {
-                    rect.xPos = topTile.rect.right() - 10;
+                    rect.xPos = topTile.right() - 10;
                 }
                 wallState = WallState.NONE;
                 isTouchingSideWall = false;
@@ -268,10 +225,9 @@ public class Player extends PhysicsEntity {
                 isClimbing = false;
                 blockingInput = false;
                 climbTimer = 0;
-                currAnimState = PlayerAnimState.IDLE;
-                currAnimationPlayer = animPlayerMap.get(currAnimState);
-                currAnimationPlayer.reset();
-                sprite = currAnimationPlayer.getCurrentFrame(dt);
+                animState = PlayerAnimState.IDLE.ordinal();
+                animTime = dt;
+                sprite = animations.frame(animState, animTime);
                 lockAnimationThisFrame = false;
                 return;
             }
@@ -315,48 +271,28 @@ public class Player extends PhysicsEntity {
         updateGridPos(32);
     }
 
-    public void resolveCollisionX() {
-        // for debug only
-        physicsTilesAround.intersectedTiles.clear();
-        for (OnGridTile tile : physicsTilesAround.tiles) {
-            if (tile != null) {
-                if (this.rect.intersects(tile.rect)) {
-                    physicsTilesAround.intersectedTiles.add(tile);
-                    // moving right
-                    if (rect.xPos > prevX) {
-                        rect.xPos = tile.rect.xPos - rect.w;
-                        isTouchingSideWall = true;
-                    }
-                    // moving left
-                    else if (rect.xPos < prevX) {
-                        rect.xPos = tile.rect.xPos + tile.rect.w;
-                        isTouchingSideWall = true;
-                    }
-                }
-            }
-
+    public void resolveCollisionX(double dx) {
+        // the sweep stops the rect flush against the wall (moving right or left)
+        if (rect.sweepX(physicsTilesAround.map, dx)) {
+            isTouchingSideWall = true;
+            contacts.touchWall(dx > 0);
         }
     }
 
-    public void resolveCollisionY() {
+    public void resolveCollisionY(double dy) {
         boolean groundedThisStep = false;
-        for (OnGridTile tile : physicsTilesAround.tiles) {
-            if (tile != null) {
-                if (this.rect.intersects(tile.rect)) {
-                    physicsTilesAround.intersectedTiles.add(tile);
-                    // moving down in a tile
-                    if (velocityY > 0) {
-                        rect.yPos = tile.rect.yPos - rect.h;
-                        groundedThisStep = true;
-                        this.velocityY = 0;
-                        this.remainingJumps = 100;
-                    }
-                    // moving up in a tile
-                    else if (velocityY < 0) {
-                        rect.yPos = tile.rect.yPos + tile.rect.h;
-                        this.velocityY = 0;
-                    }
-                }
+        if (rect.sweepY(physicsTilesAround.map, dy)) {
+            // moving down in a tile
+            if (dy > 0) {
+                groundedThisStep = true;
+                this.velocityY = 0;
+                this.remainingJumps = 100;
+                contacts.touchGround(physicsTilesAround.map);
+            }
+            // moving up in a tile
+            else {
+                this.velocityY = 0;
+                contacts.touchCeiling();
             }
         }
         onGround = groundedThisStep;
@@ -364,45 +300,21 @@ public class Player extends PhysicsEntity {
 
     public void updateAnimation(double dt) {
         if (lockAnimationThisFrame) {
-            currAnimationPlayer = animPlayerMap.get(currAnimState);
-            currAnimationPlayer.reset();
-            sprite = currAnimationPlayer.getCurrentFrame(dt);
+            animTime = 0; // restarts the current state
             lockAnimationThisFrame = false;
-            return;
-        }
-        if (!wallState.equals(WallState.NONE)) {
-            if (wallState.equals(WallState.CLIMBING)) {
-                this.nextAnimState = PlayerAnimState.WALL_CLIMB;
-            } else if (wallState.equals(WallState.HOLDING)) {
-                this.nextAnimState = PlayerAnimState.WALL_CONTACT;
-            } else if (wallState.equals(WallState.SLIDING)) {
-                this.nextAnimState = PlayerAnimState.WALL_SLIDE;
-            }
-        } else if (onAir) {
-            if (onJumpTransition) {
-                this.nextAnimState = PlayerAnimState.JUMP_TRANSITION;
-            } else if (isJumping) {
-                this.nextAnimState = PlayerAnimState.JUMP_START;
-            } else {
-                this.nextAnimState = PlayerAnimState.JUMP_FALL;
-            }
-        } else if (isMoving && game.inputs.isSprinting) {
-            this.nextAnimState = PlayerAnimState.RUN;
-        } else if (isMoving) {
-            this.nextAnimState = PlayerAnimState.WALK;
         } else {
-            this.nextAnimState = PlayerAnimState.IDLE;
-        }
-        if (nextAnimState != currAnimState) {
-            currAnimState = nextAnimState;
-            currAnimationPlayer = animPlayerMap.get(currAnimState);
-            currAnimationPlayer.reset();
+            int next = animations.nextState(this, animState);
+            if (next != animState) {
+                animState = next;
+                animTime = 0;
+            }
         }
-        sprite = currAnimationPlayer.getCurrentFrame(dt);
+        animTime += dt;
+        sprite = animations.frame(animState, animTime);
     }
 
     public void updateAnimationRenderOffset() {
-        this.animRenderOffset = currAnimationPlayer.animation.animRenderOffset;
+        this.animRenderOffset = animations.animation(animState).animRenderOffset;
 
         this.renderOffset.x = (int) ((this.rect.w - (sprite.getWidth() + renderOffset.w)) / 2) + animRenderOffset.x;
         this.renderOffset.y = (int) ((this.rect.h - (sprite.getHeight() + renderOffset.h))) + animRenderOffset.y;
@@ -418,56 +330,32 @@ public class Player extends PhysicsEntity {
         alphaY = prevY + (rect.yPos - prevY) * ipf;
     }
 
-    public void render(Graphics g) {
-        if (sprite != null) {
+    // Copies what is needed to draw the player into the snapshot, the renderer
+    // never reads the fields that update() is changing
+    public void writeSnapshot(RenderSnapshot snapshot) {
+        int drawW = sprite != null ? sprite.getWidth() + renderOffset.w : 0;
+        int drawH = sprite != null ? sprite.getHeight() + renderOffset.h : 0;
+        BufferedImage prepared = sprite != null ? animations.animation(animState)
+                .scaledFrame(animations.frameIndex(animState, animTime), imageScalingFactor, !facingRight) : null;
+        if (prepared != null && prepared.getWidth() == drawW && prepared.getHeight() == drawH) {
+            // already scaled (and mirrored), drawn as it is
+            int x = facingRight ? ((int) alphaX) + renderOffset.x : ((int) alphaX) - renderOffset.x + rect.w - drawW;
+            snapshot.addSprite(prepared, x, ((int) alphaY) + renderOffset.y, drawW, drawH);
+        } else if (sprite != null) {
             if (facingRight) {
-                g.drawImage(sprite, ((int) alphaX) + renderOffset.x + (int) (game.camera.cameraOffsetX),
-                        ((int) alphaY) + renderOffset.y + (int) (game.camera.cameraOffsetY),
+                snapshot.addSprite(sprite, ((int) alphaX) + renderOffset.x, ((int) alphaY) + renderOffset.y,
                         sprite.getWidth() + renderOffset.w,
-                        sprite.getHeight() + renderOffset.h, null);
-
-                // g.setColor(Color.BLUE);
-                // g.drawRect(((int) alphaX) + renderOffset.x, ((int) alphaY) + renderOffset.y,
-                // sprite.getWidth() + renderOffset.w,
-                // sprite.getHeight() + renderOffset.h);
-
+                        sprite.getHeight() + renderOffset.h);
             } else {
-                g.drawImage(sprite, ((int) alphaX) - renderOffset.x + rect.w + (int) (game.camera.cameraOffsetX),
-                        ((int) alphaY) + renderOffset.y + (int) (game.camera.cameraOffsetY),
+                // negative width draws the sprite mirrored
+                snapshot.addSprite(sprite, ((int) alphaX) - renderOffset.x + rect.w,
+                        ((int) alphaY) + renderOffset.y,
                         -sprite.getWidth() - renderOffset.w,
-                        sprite.getHeight() + renderOffset.h, null);
-
-                // g.setColor(Color.BLUE);
-                // g.drawRect(((int) alphaX) - renderOffset.x + rect.w - renderOffset.w -
-                // sprite.getWidth(),
-                // ((int) alphaY) + renderOffset.y,
-                // sprite.getWidth() + renderOffset.w, sprite.getHeight() + renderOffset.h);
-
+                        sprite.getHeight() + renderOffset.h);
             }
-            // g.setColor(new Color(225, 225, 0, 100));
-            // for (OnGridTile tile : new ArrayList<>(physicsTilesAround.tiles)) {
-            // g.fillRect((int) tile.rect.xPos, (int) tile.rect.yPos, tile.rect.w,
-            // tile.rect.h);
-            // }
-            // g.setColor(Color.BLACK);
-            // for (OnGridTile tile : new ArrayList<>(physicsTilesAround.debugTiles)) {
-            // g.drawRect((int) tile.rect.xPos, (int) tile.rect.yPos, tile.rect.w,
-            // tile.rect.h);
-            // }
-            // g.setColor(new Color(0, 225, 0, 190));
-            // for (OnGridTile tile : new ArrayList<>(physicsTilesAround.intersectedTiles))
-            // {
-            // g.fillRect((int) tile.rect.xPos, (int) tile.rect.yPos, tile.rect.w,
-            // tile.rect.h);
-            // }
-
         } else {
-            // System.out.println("Sprite is null " + currAnimState);
-            g.setColor(Color.RED); // fallback
-            g.fillRect((int) alphaX, (int) alphaY, rect.w, rect.h);
+            // System.out.println("Sprite is null " + animations.name(animState));
+            snapshot.addSprite(null, (int) alphaX, (int) alphaY, rect.w, rect.h);
         }
-        // g.setColor(new Color(0, 0, 0, 50));
-        // g.fillRect((int) alphaX, (int) alphaY, rect.w, rect.h);
-
     }
 }
@@ -0,0 +1,135 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Everything the renderer needs from one simulation frame, copied out of the
+// entities by the game thread. The renderer only reads snapshots, so it never
+// sees an entity halfway through an update. Instances are reused by
+// SnapshotBuffer and the arrays only grow, so taking a snapshot does not allocate.
+public class RenderSnapshot {
+    long frame; // 0 until the first publish
+    double cameraX, cameraY, cameraOffsetX, cameraOffsetY;
+
+    // sprites in world pixels, a negative width draws the image mirrored,
+    // a null image draws a red box (missing animation frame)
+    int spriteCount;
+    BufferedImage[] spriteImage = new BufferedImage[8];
+    int[] spriteX = new int[8], spriteY = new int[8], spriteW = new int[8], spriteH = new int[8];
+
+    // physics world bodies, drawn as outlines for now
+    int bodyCount;
+    double[] bodyX = new double[64], bodyY = new double[64];
+    int[] bodyW = new int[64], bodyH = new int[64];
+
+    private static final Color BODY_COLOR = new Color(200, 40, 40, 200);
+
+    public void clear() {
+        spriteCount = 0;
+        bodyCount = 0;
+    }
+
+    public void addSprite(BufferedImage image, int x, int y, int w, int h) {
+        if (spriteCount == spriteImage.length) {
+            int capacity = spriteCount * 2;
+            spriteImage = Arrays.copyOf(spriteImage, capacity);
+            spriteX = Arrays.copyOf(spriteX, capacity);
+            spriteY = Arrays.copyOf(spriteY, capacity);
+            spriteW = Arrays.copyOf(spriteW, capacity);
+            spriteH = Arrays.copyOf(spriteH, capacity);
+        }
+        spriteImage[spriteCount] = image;
+        spriteX[spriteCount] = x;
+        spriteY[spriteCount] = y;
+        spriteW[spriteCount] = w;
+        spriteH[spriteCount] = h;
+        spriteCount++;
+    }
+
+    public void ensureBodyCapacity(int count) {
+        if (bodyX.length < count) {
+            int capacity = Math.max(count, bodyX.length * 2);
+            bodyX = Arrays.copyOf(bodyX, capacity);
+            bodyY = Arrays.copyOf(bodyY, capacity);
+            bodyW = Arrays.copyOf(bodyW, capacity);
+            bodyH = Arrays.copyOf(bodyH, capacity);
+        }
+    }
+
+    public void drawSprites(Graphics g) {
+        int offsetX = (int) cameraOffsetX;
+        int offsetY = (int) cameraOffsetY;
+        for (int i = 0; i < spriteCount; i++) {
+            if (spriteImage[i] != null) {
+                g.drawImage(spriteImage[i], spriteX[i] + offsetX, spriteY[i] + offsetY, spriteW[i], spriteH[i], null);
+            } else {
+                g.setColor(Color.RED); // fallback
+                g.fillRect(spriteX[i] + offsetX, spriteY[i] + offsetY, spriteW[i], spriteH[i]);
+            }
+        }
+    }
+
+    public void drawSprites(SoftwareRasterizer raster) {
+        int offsetX = (int) cameraOffsetX;
+        int offsetY = (int) cameraOffsetY;
+        for (int i = 0; i < spriteCount; i++) {
+            if (spriteImage[i] != null) {
+                raster.drawImage(spriteImage[i], spriteX[i] + offsetX, spriteY[i] + offsetY, spriteW[i], spriteH[i]);
+            } else {
+                raster.fillRect(0xff0000, spriteX[i] + offsetX, spriteY[i] + offsetY, spriteW[i], spriteH[i]); // fallback
+            }
+        }
+    }
+
+    // pixels the sprites cover, overlaps counted twice
+    public long spritePixels() {
+        long pixels = 0;
+        for (int i = 0; i < spriteCount; i++) {
+            pixels += (long) Math.abs(spriteW[i]) * spriteH[i];
+        }
+        return pixels;
+    }
+
+    public void drawBodies(Graphics g) {
+        g.setColor(BODY_COLOR);
+        for (int i = 0; i < bodyCount; i++) {
+            g.drawRect((int) (bodyX[i] + cameraOffsetX), (int) (bodyY[i] + cameraOffsetY), bodyW[i], bodyH[i]);
+        }
+    }
+}
+
+// Lock-free triple buffer between the game thread (single writer) and the render
+// thread (single reader). The writer fills its own snapshot and swaps it into the
+// middle slot, the reader swaps the middle slot out only when it holds a newer
+// frame. Neither side ever waits for the other.
+class SnapshotBuffer {
+    private static final int INDEX_MASK = 0b11;
+    private static final int FRESH = 0b100; // middle holds a frame the reader has not taken yet
+
+    private final RenderSnapshot[] snapshots = { new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot() };
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int writeIndex = 0; // only touched by the writer
+    private int readIndex = 2; // only touched by the reader
+    private long framesPublished;
+
+    // snapshot the writer may fill, cleared of the previous frame's entities
+    public RenderSnapshot beginWrite() {
+        RenderSnapshot snapshot = snapshots[writeIndex];
+        snapshot.clear();
+        return snapshot;
+    }
+
+    public void publish() {
+        snapshots[writeIndex].frame = ++framesPublished;
+        writeIndex = middle.getAndSet(writeIndex | FRESH) & INDEX_MASK;
+    }
+
+    // latest published snapshot, stays valid until the next acquire
+    public RenderSnapshot acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            readIndex = middle.getAndSet(readIndex) & INDEX_MASK;
+        }
+        return snapshots[readIndex];
+    }
+}
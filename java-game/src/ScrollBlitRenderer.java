@@ -0,0 +1,185 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+// Optional way of drawing the background and the tiles (--scroll-blit) that
+// reuses the previous frame. The tiles are kept in a screen sized layer that
+// follows the camera: when the camera moved by dx, dy whole pixels the layer
+// is shifted with copyArea and only the strips that came into view are drawn.
+// The background does not scroll, so it can not live in that layer. It is put
+// together with the layer in an opaque composite image once the camera has
+// stood still for a frame, after that a frame is one opaque blit until the
+// camera moves again.
+// The tiles are drawn at the camera offset rounded the way the sprites are
+// ((int) offset), so they never drift a pixel away from the player.
+// With a pixelScale (see App) the layer has the framebuffer's size, width x
+// height is 1/pixelScale of the window, and render is given a Graphics that
+// draws through a 1/pixelScale transform. The layer then scrolls by whole
+// framebuffer pixels, the camera offset is rounded down to them.
+public class ScrollBlitRenderer {
+    final int width, height; // of the layer
+    final int pixelScale;
+    private final BufferedImage layer; // tiles on transparent, at layerOffsetX, layerOffsetY
+    private final Graphics2D layerGraphics; // kept, creating one every frame allocates
+    private final BufferedImage composite; // background + layer
+    private int layerOffsetX, layerOffsetY;
+    private int layerEdits = -1; // TileGrid.edits the layer was drawn with, -1 before the first frame
+    private boolean compositeValid;
+
+    // stats
+    long frames, fullRedraws, scrolls, compositeBuilds;
+    long dirtyPixels; // layer pixels redrawn, over all frames
+    int dirtyPixelsLastFrame;
+
+    public ScrollBlitRenderer(int width, int height) {
+        this(width, height, 1);
+    }
+
+    public ScrollBlitRenderer(int width, int height, int pixelScale) {
+        this.width = width;
+        this.height = height;
+        this.pixelScale = pixelScale;
+        this.layer = GameImage.createCompatibleImage(width, height);
+        this.layerGraphics = layer.createGraphics();
+        this.composite = GameImage.createCompatibleImage(width, height, Transparency.OPAQUE);
+    }
+
+    // draws what Background.render and TileMap.render would have drawn
+    public void render(Graphics g, Background background, TileMap map, double cameraOffsetX, double cameraOffsetY) {
+        frames++;
+        int offsetX = Math.floorDiv((int) cameraOffsetX, pixelScale);
+        int offsetY = Math.floorDiv((int) cameraOffsetY, pixelScale);
+        int dx = offsetX - layerOffsetX, dy = offsetY - layerOffsetY;
+        dirtyPixelsLastFrame = 0;
+        if (layerEdits != map.grid.edits || Math.abs(dx) >= width || Math.abs(dy) >= height) {
+            redraw(map, offsetX, offsetY, 0, 0, width, height);
+            fullRedraws++;
+        } else if (dx != 0 || dy != 0) {
+            scroll(map, offsetX, offsetY, dx, dy);
+            scrolls++;
+        }
+        layerOffsetX = offsetX;
+        layerOffsetY = offsetY;
+        layerEdits = map.grid.edits;
+
+        if (dirtyPixelsLastFrame > 0) {
+            // moving: the composite would only be used once, draw straight to the frame
+            compositeValid = false;
+            background.render(g);
+            drawLayer(g, map);
+            return;
+        }
+        if (!compositeValid) {
+            Graphics2D c = composite.createGraphics();
+            c.scale(1.0 / pixelScale, 1.0 / pixelScale); // like the g given to render
+            background.render(c);
+            drawLayer(c, map);
+            c.dispose();
+            compositeValid = true;
+            compositeBuilds++;
+        }
+        g.drawImage(composite, 0, 0, width * pixelScale, height * pixelScale, null);
+    }
+
+    public double averageDirtyPixels() {
+        return frames == 0 ? 0 : (double) dirtyPixels / frames;
+    }
+
+    public String stats() {
+        return String.format("%d frames, %d full redraws, %d scrolls, %d composites, %.0f px redrawn/frame (%.1f%%)",
+                frames, fullRedraws, scrolls, compositeBuilds, averageDirtyPixels(),
+                100 * averageDirtyPixels() / (width * height));
+    }
+
+    // Blends the layer only over the tiles: every tile row from its first to its
+    // last tile, rows with the same range in one draw. The rest of the layer is
+    // transparent, blending it would cost as much as blending tiles and change nothing.
+    // Layer pixels here, g is given window pixels (times pixelScale)
+    private void drawLayer(Graphics g, TileMap map) {
+        int tileSize = map.tileSize;
+        int scale = pixelScale;
+        if (tileSize == 0) {
+            return;
+        }
+        if (tileSize % scale != 0) {
+            // tile edges inside layer pixels, the whole layer is blended instead
+            g.drawImage(layer, 0, 0, width * scale, height * scale, null);
+            return;
+        }
+        int firstColumn = Math.floorDiv(-layerOffsetX * scale, tileSize);
+        int lastColumn = Math.floorDiv((width - 1 - layerOffsetX) * scale, tileSize);
+        int lastRow = Math.floorDiv((height - 1 - layerOffsetY) * scale, tileSize);
+        int spanY = 0, spanLeft = 0, spanRight = -1; // rows not drawn yet, spanRight < spanLeft when empty
+        for (int row = Math.floorDiv(-layerOffsetY * scale, tileSize); row <= lastRow + 1; row++) {
+            int left = 0, right = -1;
+            if (row <= lastRow) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    if (map.loadedTileAt(column, row) != TileGrid.EMPTY) {
+                        left = column;
+                        break;
+                    }
+                }
+                for (int column = lastColumn; column >= left && right < 0; column--) {
+                    if (map.loadedTileAt(column, row) != TileGrid.EMPTY) {
+                        right = column;
+                    }
+                }
+            }
+            if (left == spanLeft && right == spanRight) {
+                continue;
+            }
+            int y = Math.max(0, Math.min(height, row * tileSize / scale + layerOffsetY));
+            if (spanRight >= spanLeft) {
+                int x1 = Math.max(0, spanLeft * tileSize / scale + layerOffsetX);
+                int x2 = Math.min(width, (spanRight + 1) * tileSize / scale + layerOffsetX);
+                g.drawImage(layer, x1 * scale, spanY * scale, x2 * scale, y * scale, x1, spanY, x2, y, null);
+            }
+            spanY = y;
+            spanLeft = left;
+            spanRight = right;
+        }
+    }
+
+    // Moves what is still visible by dx, dy and draws the one or two strips
+    // that came into view
+    private void scroll(TileMap map, int offsetX, int offsetY, int dx, int dy) {
+        Graphics2D g = layerGraphics;
+        int keptW = width - Math.abs(dx), keptH = height - Math.abs(dy);
+        // copyArea's source is the rectangle that stays visible, it lands dx, dy further.
+        // Src: the layer is translucent, blending would keep what was there before
+        g.setClip(null);
+        g.setComposite(AlphaComposite.Src);
+        g.copyArea(Math.max(0, -dx), Math.max(0, -dy), keptW, keptH, dx, dy);
+        if (dx != 0) {
+            redraw(map, offsetX, offsetY, dx > 0 ? 0 : width + dx, 0, Math.abs(dx), height);
+        }
+        if (dy != 0) {
+            // the columns of the vertical strip are already done
+            int x = dx > 0 ? dx : 0;
+            redraw(map, offsetX, offsetY, x, dy > 0 ? 0 : height + dy, keptW, Math.abs(dy));
+        }
+    }
+
+    private void redraw(TileMap map, int offsetX, int offsetY, int x, int y, int w, int h) {
+        Graphics2D g = layerGraphics;
+        g.setClip(x, y, w, h);
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(x, y, w, h);
+        g.setComposite(AlphaComposite.SrcOver);
+        if (pixelScale == 1) {
+            map.renderRegion(g, offsetX, offsetY, x, y, w, h);
+        } else {
+            // the clip stays in layer pixels, the tiles are drawn in window pixels
+            AffineTransform identity = g.getTransform();
+            g.scale(1.0 / pixelScale, 1.0 / pixelScale);
+            int s = pixelScale;
+            map.renderRegion(g, offsetX * s, offsetY * s, x * s, y * s, w * s, h * s);
+            g.setTransform(identity);
+        }
+        dirtyPixelsLastFrame += w * h;
+        dirtyPixels += (long) w * h;
+    }
+}
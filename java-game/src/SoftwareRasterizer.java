@@ -0,0 +1,295 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Render backend (--software-raster) that copies images straight into the int[]
+// of a TYPE_INT_RGB BufferedImage instead of going through Graphics.drawImage,
+// whose per call cost (validation, loop lookup, clipping objects) is more than
+// the copy itself for 32 px tiles and sprites.
+// A frame is recorded first (begin, drawImage / fillRect in painter's order,
+// finish), then finish cuts the framebuffer into horizontal bands and renders
+// them on the fork-join pool. Before that it sorts the commands into the bands
+// they overlap (a command taller than a band goes into several), so a band only
+// walks its own commands, in recorded order, and only writes its own rows:
+// bands never share a pixel.
+// Images are converted once to premultiplied int pixels at the size they are
+// drawn at (also mirrored, for a negative width, like drawImage) and kept until
+// the BufferedImage is garbage. Images without a single translucent pixel are
+// copied row by row, the others blended pixel by pixel (src + dst * (1 - alpha)).
+// Only the recording methods touch that cache, so they must all be called from
+// one thread.
+// With a scale (--pixel-scale) coordinates and sizes are given in window pixels
+// and divided by it, like drawing through a 1/scale transform. The corners are
+// rounded down, so images that touch still touch.
+public class SoftwareRasterizer {
+    final BufferedImage image;
+    final int width, height;
+    private final int[] pixels;
+    int bands; // 1 renders on the calling thread
+    int scale = 1; // window pixels per image pixel
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    // the recorded frame, a null image is a fillRect of color
+    private int count;
+    private RasterImage[] commandImage = new RasterImage[256];
+    private int[] commandX = new int[256], commandY = new int[256];
+    private int[] commandW = new int[256], commandH = new int[256], commandColor = new int[256];
+    // commands of band b are bandCommands[bandStart[b]] to bandCommands[bandStart[b + 1] - 1]
+    private int[] bandStart = new int[2], bandFill = new int[1];
+    private int[] bandCommands = new int[256];
+
+    private final WeakHashMap<BufferedImage, RasterImage> converted = new WeakHashMap<>();
+    // stats
+    int conversions;
+    int culled; // commands of the last frame entirely outside of it
+
+    public SoftwareRasterizer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.bands = Math.max(1, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    public void begin() {
+        count = 0;
+        culled = 0;
+    }
+
+    // Like Graphics.drawImage(image, x, y, w, h, null), nearest neighbour
+    public void drawImage(BufferedImage source, int x, int y, int w, int h) {
+        record(source, x, y, w, h, 0);
+    }
+
+    public void drawImage(BufferedImage source, int x, int y) {
+        drawImage(source, x, y, source.getWidth(), source.getHeight());
+    }
+
+    // opaque rgb, the alpha byte is ignored
+    public void fillRect(int rgb, int x, int y, int w, int h) {
+        record(null, x, y, w, h, rgb);
+    }
+
+    public int commandCount() {
+        return count;
+    }
+
+    // renders the recorded commands into image
+    public void finish() {
+        int bandHeight = (height + bands - 1) / bands;
+        int bandCount = (height + bandHeight - 1) / bandHeight;
+        sortIntoBands(bandHeight, bandCount);
+        if (bandCount == 1) {
+            renderBand(0, 0, height);
+        } else {
+            pool.invoke(new Bands(0, bandCount, bandHeight));
+        }
+    }
+
+    // splits the bands in halves until one is left, the pool steals the halves
+    private class Bands extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final int first, end, bandHeight;
+
+        Bands(int first, int end, int bandHeight) {
+            this.first = first;
+            this.end = end;
+            this.bandHeight = bandHeight;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - first == 1) {
+                renderBand(first, first * bandHeight, Math.min(height, (first + 1) * bandHeight));
+                return;
+            }
+            int middle = (first + end) >>> 1;
+            invokeAll(new Bands(first, middle, bandHeight), new Bands(middle, end, bandHeight));
+        }
+    }
+
+    // Counting sort of the command indexes by band, in recorded order within a band.
+    // Commands are only recorded when visible, so they overlap at least one band.
+    private void sortIntoBands(int bandHeight, int bandCount) {
+        if (bandStart.length < bandCount + 1) {
+            bandStart = new int[bandCount + 1];
+            bandFill = new int[bandCount];
+        }
+        Arrays.fill(bandStart, 0, bandCount + 1, 0);
+        for (int i = 0; i < count; i++) {
+            int last = lastBand(i, bandHeight, bandCount);
+            for (int band = firstBand(i, bandHeight); band <= last; band++) {
+                bandStart[band + 1]++;
+            }
+        }
+        for (int band = 0; band < bandCount; band++) {
+            bandStart[band + 1] += bandStart[band];
+        }
+        if (bandCommands.length < bandStart[bandCount]) {
+            bandCommands = new int[Math.max(bandStart[bandCount], bandCommands.length * 2)];
+        }
+        System.arraycopy(bandStart, 0, bandFill, 0, bandCount);
+        for (int i = 0; i < count; i++) {
+            int last = lastBand(i, bandHeight, bandCount);
+            for (int band = firstBand(i, bandHeight); band <= last; band++) {
+                bandCommands[bandFill[band]++] = i;
+            }
+        }
+    }
+
+    private int firstBand(int command, int bandHeight) {
+        return Math.max(0, commandY[command]) / bandHeight;
+    }
+
+    private int lastBand(int command, int bandHeight, int bandCount) {
+        return Math.min(bandCount - 1, (commandY[command] + commandH[command] - 1) / bandHeight);
+    }
+
+    // the commands of the band clipped to the rows top (inclusive) to bottom (exclusive)
+    private void renderBand(int band, int top, int bottom) {
+        for (int k = bandStart[band]; k < bandStart[band + 1]; k++) {
+            int i = bandCommands[k];
+            int y = commandY[i], h = commandH[i];
+            int fromRow = Math.max(top, y), toRow = Math.min(bottom, y + h);
+            if (fromRow >= toRow) {
+                continue;
+            }
+            int x = commandX[i], w = commandW[i];
+            int fromX = Math.max(0, x), toX = Math.min(width, x + w);
+            RasterImage source = commandImage[i];
+            if (source == null) {
+                int color = commandColor[i];
+                for (int row = fromRow; row < toRow; row++) {
+                    Arrays.fill(pixels, row * width + fromX, row * width + toX, color);
+                }
+            } else if (source.opaque) {
+                for (int row = fromRow; row < toRow; row++) {
+                    System.arraycopy(source.pixels, (row - y) * w + fromX - x, pixels, row * width + fromX, toX - fromX);
+                }
+            } else {
+                for (int row = fromRow; row < toRow; row++) {
+                    blendRow(source.pixels, (row - y) * w + fromX - x, row * width + fromX, toX - fromX);
+                }
+            }
+        }
+    }
+
+    // premultiplied src over opaque dst: dst * (255 - alpha) / 255 per channel,
+    // red and blue in one multiply, + src
+    private void blendRow(int[] source, int from, int to, int length) {
+        int[] pixels = this.pixels;
+        for (int i = 0; i < length; i++) {
+            int s = source[from + i];
+            int alpha = s >>> 24;
+            if (alpha == 255) {
+                pixels[to + i] = s;
+            } else if (alpha != 0) {
+                int d = pixels[to + i];
+                int inverse = 255 - alpha;
+                int rb = (d & 0xff00ff) * inverse;
+                int g = (d & 0x00ff00) * inverse;
+                rb = ((rb + 0x800080 + ((rb >>> 8) & 0xff00ff)) >>> 8) & 0xff00ff;
+                g = ((g + 0x008000 + ((g >>> 8) & 0x00ff00)) >>> 8) & 0x00ff00;
+                pixels[to + i] = s + rb + g;
+            }
+        }
+    }
+
+    private void record(BufferedImage source, int x, int y, int w, int h, int color) {
+        boolean mirrored = source != null && w < 0;
+        if (mirrored) {
+            // drawn mirrored from x + w to x
+            x += w;
+            w = -w;
+        }
+        if (scale != 1) {
+            int right = Math.floorDiv(x + w, scale), bottom = Math.floorDiv(y + h, scale);
+            x = Math.floorDiv(x, scale);
+            y = Math.floorDiv(y, scale);
+            w = right - x;
+            h = bottom - y;
+        }
+        if (!visible(x, y, w, h)) {
+            return;
+        }
+        add(source == null ? null : convert(source, mirrored ? -w : w, h), x, y, w, h, color);
+    }
+
+    private boolean visible(int x, int y, int w, int h) {
+        if (x >= width || y >= height || x + w <= 0 || y + h <= 0 || w <= 0 || h <= 0) {
+            culled++;
+            return false;
+        }
+        return true;
+    }
+
+    private void add(RasterImage source, int x, int y, int w, int h, int color) {
+        if (count == commandImage.length) {
+            int capacity = count * 2;
+            commandImage = Arrays.copyOf(commandImage, capacity);
+            commandX = Arrays.copyOf(commandX, capacity);
+            commandY = Arrays.copyOf(commandY, capacity);
+            commandW = Arrays.copyOf(commandW, capacity);
+            commandH = Arrays.copyOf(commandH, capacity);
+            commandColor = Arrays.copyOf(commandColor, capacity);
+        }
+        commandImage[count] = source;
+        commandX[count] = x;
+        commandY[count] = y;
+        commandW[count] = w;
+        commandH[count] = h;
+        commandColor[count] = color;
+        count++;
+    }
+
+    // the pixels of source drawn at w x h (mirrored when w is negative)
+    private RasterImage convert(BufferedImage source, int w, int h) {
+        RasterImage first = converted.get(source);
+        for (RasterImage variant = first; variant != null; variant = variant.next) {
+            if (variant.w == w && variant.h == h) {
+                return variant;
+            }
+        }
+        BufferedImage sized = source;
+        if (w != source.getWidth() || h != source.getHeight()) {
+            sized = GameImage.scaledCopy(source, Math.abs(w), h, w < 0);
+        }
+        RasterImage variant = new RasterImage(sized, w, h, first);
+        converted.put(source, variant);
+        conversions++;
+        return variant;
+    }
+
+    private static class RasterImage {
+        final int w, h; // as asked for, w < 0 is mirrored
+        final int[] pixels; // premultiplied argb, |w| * h
+        final boolean opaque;
+        final RasterImage next; // other sizes of the same image
+
+        RasterImage(BufferedImage sized, int w, int h, RasterImage next) {
+            this.w = w;
+            this.h = h;
+            this.next = next;
+            int width = Math.abs(w);
+            this.pixels = sized.getRGB(0, 0, width, h, null, 0, width);
+            boolean opaque = true;
+            for (int i = 0; i < pixels.length; i++) {
+                int argb = pixels[i];
+                int alpha = argb >>> 24;
+                if (alpha != 255) {
+                    opaque = false;
+                    pixels[i] = alpha << 24 | premultiply(argb >> 16 & 0xff, alpha) << 16
+                            | premultiply(argb >> 8 & 0xff, alpha) << 8 | premultiply(argb & 0xff, alpha);
+                }
+            }
+            this.opaque = opaque;
+        }
+
+        static int premultiply(int channel, int alpha) {
+            return (channel * alpha + 127) / 255;
+        }
+    }
+}
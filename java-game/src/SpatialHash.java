@@ -0,0 +1,294 @@
+import java.util.Arrays;
+
+// Uniform grid over the PhysicsWorld bodies, used as the broad-phase of body vs
+// body collision. Cells are a whole number of tiles and at least as big as the
+// largest body, so two bodies can only overlap when their top-left cells are
+// the same or neighbours. Bodies are only moved between cells when their cell
+// changes, which for most bodies is not every step.
+// Pair testing only visits the occupied cells (a dense list, a cell leaves it
+// when its last body does). An empty cell stays in the table for a while, bodies
+// often step back into the cell they left, but once more than half of the cells
+// are empty they are all dropped at once, so bodies that keep going somewhere
+// new (projectiles) do not make the table grow with the distance travelled.
+public class SpatialHash {
+    private static final long NO_KEY = Long.MIN_VALUE; // also the bodyKey of a body in no cell
+    private static final int MIN_CELLS = 128; // below this empty cells are not worth dropping
+
+    // called for every pair of bodies that really overlap, a < b
+    interface PairListener {
+        void onPair(int a, int b);
+    }
+
+    final int cellSize;
+
+    // cell key -> cell index, open addressing
+    private long[] keys = new long[256];
+    private int[] cellIndexOf = new int[256];
+    private int cellCount;
+    // members of every cell
+    private long[] cellKeys = new long[128];
+    private int[][] cellMembers = new int[128][];
+    private int[] cellMemberCount = new int[128];
+    // cells with at least one member, and the position of every cell in that list
+    private int[] occupied = new int[128];
+    private int[] occupiedIndex = new int[128];
+    private int occupiedCount;
+    // where every body currently is
+    private long[] bodyKey = new long[64];
+    private int[] bodyCell = new int[64];
+    private int[] bodyIndexInCell = new int[64];
+    private int trackedBodies;
+
+    // stats of the last update / query
+    int bodiesRehashed, pairsTested, pairsOverlapping;
+    int compactions;
+
+    public SpatialHash(int tileSize, int largestBodySize) {
+        int tilesPerCell = Math.max(1, (largestBodySize + tileSize - 1) / tileSize);
+        this.cellSize = tilesPerCell * tileSize;
+        Arrays.fill(keys, NO_KEY);
+    }
+
+    public void update(PhysicsWorld world) {
+        bodiesRehashed = 0;
+        if (bodyKey.length < world.count) {
+            int capacity = Math.max(world.count, bodyKey.length * 2);
+            bodyKey = Arrays.copyOf(bodyKey, capacity);
+            bodyCell = Arrays.copyOf(bodyCell, capacity);
+            bodyIndexInCell = Arrays.copyOf(bodyIndexInCell, capacity);
+        }
+        for (int i = 0; i < world.count; i++) {
+            long key = key((int) Math.floor(world.xPos[i] / cellSize), (int) Math.floor(world.yPos[i] / cellSize));
+            if (i < trackedBodies) {
+                if (bodyKey[i] == key) {
+                    continue;
+                }
+                if (bodyKey[i] != NO_KEY) {
+                    removeFromCell(i);
+                }
+            }
+            addToCell(i, key);
+            bodiesRehashed++;
+        }
+        trackedBodies = world.count;
+        if (cellCount > MIN_CELLS && occupiedCount * 2 < cellCount) {
+            dropEmptyCells();
+        }
+    }
+
+    // PhysicsWorld.remove moved its last body (index last) into the slot of the
+    // removed one (index body). last == body when the last body was removed.
+    public void removeBody(int body, int last) {
+        if (body >= trackedBodies) {
+            return; // neither of them is in a cell yet
+        }
+        removeFromCell(body);
+        if (last == body || last >= trackedBodies) {
+            // the slot is empty now or holds a body update has not seen
+            bodyKey[body] = NO_KEY;
+        } else {
+            // the last body keeps its cell under its new index
+            int cell = bodyCell[last];
+            int index = bodyIndexInCell[last];
+            cellMembers[cell][index] = body;
+            bodyKey[body] = bodyKey[last];
+            bodyCell[body] = cell;
+            bodyIndexInCell[body] = index;
+        }
+        if (last < trackedBodies) {
+            trackedBodies--;
+        }
+    }
+
+    public int cellCount() {
+        return cellCount;
+    }
+
+    public int occupiedCellCount() {
+        return occupiedCount;
+    }
+
+    // Tests every candidate pair exactly once: the bodies inside each occupied cell
+    // against each other, then against 4 of the 8 neighbour cells (the other 4 see
+    // this cell as their neighbour). The order only depends on the bodies, so the
+    // result is deterministic.
+    public void forEachOverlappingPair(PhysicsWorld world, PairListener listener) {
+        pairsTested = 0;
+        pairsOverlapping = 0;
+        for (int k = 0; k < occupiedCount; k++) {
+            int cell = occupied[k];
+            int cellX = (int) (cellKeys[cell] >> 32);
+            int cellY = (int) cellKeys[cell];
+            testCellPairs(world, listener, cell, cell);
+            testNeighbour(world, listener, cell, cellX + 1, cellY);
+            testNeighbour(world, listener, cell, cellX - 1, cellY + 1);
+            testNeighbour(world, listener, cell, cellX, cellY + 1);
+            testNeighbour(world, listener, cell, cellX + 1, cellY + 1);
+        }
+    }
+
+    private void testNeighbour(PhysicsWorld world, PairListener listener, int cell, int cellX, int cellY) {
+        int other = find(key(cellX, cellY));
+        if (other >= 0 && cellMemberCount[other] > 0) {
+            testCellPairs(world, listener, cell, other);
+        }
+    }
+
+    private void testCellPairs(PhysicsWorld world, PairListener listener, int cell, int other) {
+        int[] members = cellMembers[cell];
+        int[] otherMembers = cellMembers[other];
+        int count = cellMemberCount[cell];
+        int otherCount = cellMemberCount[other];
+        for (int m = 0; m < count; m++) {
+            int a = members[m];
+            // inside the same cell only the members after m are left to test
+            for (int n = cell == other ? m + 1 : 0; n < otherCount; n++) {
+                int b = otherMembers[n];
+                pairsTested++;
+                if (PhysicsRect.intersects(world.xPos[a], world.yPos[a], world.w[a], world.h[a],
+                        world.xPos[b], world.yPos[b], world.w[b], world.h[b])) {
+                    pairsOverlapping++;
+                    listener.onPair(Math.min(a, b), Math.max(a, b));
+                }
+            }
+        }
+    }
+
+    static long key(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            long k = keys[i];
+            if (k == key) {
+                return cellIndexOf[i];
+            }
+            if (k == NO_KEY) {
+                return -1;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private int findOrCreate(long key) {
+        int cell = find(key);
+        if (cell >= 0) {
+            return cell;
+        }
+        if ((cellCount + 1) * 2 > keys.length) {
+            rehashTable(keys.length * 2);
+        }
+        if (cellCount == cellMembers.length) {
+            cellKeys = Arrays.copyOf(cellKeys, cellCount * 2);
+            cellMembers = Arrays.copyOf(cellMembers, cellCount * 2);
+            cellMemberCount = Arrays.copyOf(cellMemberCount, cellCount * 2);
+            occupied = Arrays.copyOf(occupied, cellCount * 2);
+            occupiedIndex = Arrays.copyOf(occupiedIndex, cellCount * 2);
+        }
+        cell = cellCount++;
+        cellKeys[cell] = key;
+        if (cellMembers[cell] == null) {
+            cellMembers[cell] = new int[8];
+        }
+        place(key, cell);
+        return cell;
+    }
+
+    private void addToCell(int body, long key) {
+        int cell = findOrCreate(key);
+        int count = cellMemberCount[cell];
+        if (count == cellMembers[cell].length) {
+            cellMembers[cell] = Arrays.copyOf(cellMembers[cell], count * 2);
+        }
+        cellMembers[cell][count] = body;
+        cellMemberCount[cell] = count + 1;
+        if (count == 0) {
+            occupiedIndex[cell] = occupiedCount;
+            occupied[occupiedCount++] = cell;
+        }
+        bodyKey[body] = key;
+        bodyCell[body] = cell;
+        bodyIndexInCell[body] = count;
+    }
+
+    private void removeFromCell(int body) {
+        int cell = bodyCell[body];
+        int index = bodyIndexInCell[body];
+        int last = --cellMemberCount[cell];
+        // swap the last member into the hole
+        int moved = cellMembers[cell][last];
+        cellMembers[cell][index] = moved;
+        bodyIndexInCell[moved] = index;
+        if (last == 0) {
+            // same for the list of occupied cells
+            int position = occupiedIndex[cell];
+            int movedCell = occupied[--occupiedCount];
+            occupied[position] = movedCell;
+            occupiedIndex[movedCell] = position;
+        }
+    }
+
+    // Keeps only the occupied cells, moved to the front in index order, and
+    // refills the key table for them. Nothing is allocated: the member arrays of
+    // the dropped cells are swapped to the back and reused by findOrCreate.
+    private void dropEmptyCells() {
+        int kept = 0;
+        for (int cell = 0; cell < cellCount; cell++) {
+            int members = cellMemberCount[cell];
+            if (members == 0) {
+                continue;
+            }
+            if (kept != cell) {
+                int[] spare = cellMembers[kept];
+                cellKeys[kept] = cellKeys[cell];
+                cellMembers[kept] = cellMembers[cell];
+                cellMemberCount[kept] = members;
+                cellMembers[cell] = spare;
+                cellMemberCount[cell] = 0;
+                for (int m = 0; m < members; m++) {
+                    bodyCell[cellMembers[kept][m]] = kept;
+                }
+            }
+            occupied[kept] = kept;
+            occupiedIndex[kept] = kept;
+            kept++;
+        }
+        cellCount = kept;
+        Arrays.fill(keys, NO_KEY);
+        for (int cell = 0; cell < cellCount; cell++) {
+            place(cellKeys[cell], cell);
+        }
+        compactions++;
+    }
+
+    private void place(long key, int cell) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != NO_KEY) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        cellIndexOf[i] = cell;
+    }
+
+    private void rehashTable(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldCells = cellIndexOf;
+        keys = new long[capacity];
+        cellIndexOf = new int[capacity];
+        Arrays.fill(keys, NO_KEY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != NO_KEY) {
+                place(oldKeys[i], oldCells[i]);
+            }
+        }
+    }
+}
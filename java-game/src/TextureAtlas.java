@@ -0,0 +1,68 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+// Packs small images (tiles, animation frames) into a few big pages in the
+// screen's native format. Every packed image is handed back as a sub image of
+// its page, so the rest of the game keeps drawing plain BufferedImages while
+// the pixels of a whole tileset or animation sit next to each other.
+// Images go in shelves: left to right until the page is full, then a new shelf
+// below as tall as the tallest image of the previous one.
+public class TextureAtlas {
+    static final int PAGE_SIZE = 512;
+    static final int PADDING = 1; // transparent border so scaled draws never pick up a neighbour
+
+    final List<BufferedImage> pages = new ArrayList<>();
+    private Graphics2D page;
+    private int shelfX, shelfY, shelfHeight;
+    int imagesPacked;
+
+    public BufferedImage add(BufferedImage image) {
+        int w = image.getWidth() + 2 * PADDING;
+        int h = image.getHeight() + 2 * PADDING;
+        if (w > PAGE_SIZE || h > PAGE_SIZE) {
+            return image; // too big to share a page, kept as it is
+        }
+        if (page == null || shelfX + w > PAGE_SIZE) {
+            // next shelf
+            shelfY += shelfHeight;
+            shelfX = 0;
+            shelfHeight = 0;
+        }
+        if (page == null || shelfY + h > PAGE_SIZE) {
+            newPage();
+        }
+        int x = shelfX + PADDING, y = shelfY + PADDING;
+        page.drawImage(image, x, y, null);
+        shelfX += w;
+        shelfHeight = Math.max(shelfHeight, h);
+        imagesPacked++;
+        return pages.get(pages.size() - 1).getSubimage(x, y, image.getWidth(), image.getHeight());
+    }
+
+    // replaces every image of the array with its packed copy
+    public void addAll(BufferedImage[] images) {
+        for (int i = 0; i < images.length; i++) {
+            images[i] = add(images[i]);
+        }
+    }
+
+    // call once everything is packed
+    public void finish() {
+        if (page != null) {
+            page.dispose();
+            page = null;
+        }
+    }
+
+    private void newPage() {
+        if (page != null) {
+            page.dispose();
+        }
+        BufferedImage image = GameImage.createCompatibleImage(PAGE_SIZE, PAGE_SIZE);
+        pages.add(image);
+        page = image.createGraphics();
+        shelfX = shelfY = shelfHeight = 0;
+    }
+}
@@ -0,0 +1,299 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Sparse, chunked storage of the on-grid tiles. Every chunk is a flat short[] of
+// tile variant ids (EMPTY = no tile) and chunks are found through an open
+// addressing table keyed by the packed chunk coordinates, so tileAt never
+// allocates and the map no longer needs an object per tile.
+// Chunks of a MapFile can be added undecoded: their key is in the table from the
+// start but the chunk is only decoded the first time chunkAt reaches it. Such
+// chunks can also be dropped again (evictOutside) and put back decoded by a
+// ChunkStreamer (install).
+// Threads: everything that changes the grid (setTile, install, evictOutside,
+// decoding in chunkAt / tileAt) runs on the game thread, or on the physics
+// workers while the game thread waits for them in PhysicsWorld.step. Other
+// threads (rendering in passive mode) only use loadedChunkAt / loadedTileAt,
+// which never decode and see an undecoded chunk as missing.
+// Chunks are stored through an AtomicReferenceArray, so a thread that gets a
+// chunk from the table also sees its cells and count as they were when it was
+// put there.
+public class TileGrid {
+    static final int CHUNK_SHIFT = 4;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT; // tiles per chunk side
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    static final short EMPTY = 0;
+    private static final long NO_KEY = Long.MIN_VALUE; // chunk coordinates never pack to this
+    private static final int NO_ENTRY = -1; // chunk that is not in a MapFile
+
+    private long[] keys;
+    private volatile AtomicReferenceArray<TileChunk> chunks; // assigned after keys on resize, see loadedChunkAt
+    private int[] lazyEntries; // MapFile directory entry of every chunk not decoded yet
+    private MapFile lazySource;
+    private int chunkCount;
+    int tilesCount;
+    int edits; // bumped by every setTile that changes a cell, for images of the map kept elsewhere
+    final AtomicInteger lazyDecodes = new AtomicInteger(); // chunks decoded on access because nothing had decoded them before
+    int residentFileChunks; // decoded MapFile chunks as of the last evictOutside
+
+    public TileGrid() {
+        keys = new long[64];
+        Arrays.fill(keys, NO_KEY);
+        lazyEntries = new int[64];
+        chunks = new AtomicReferenceArray<>(64);
+    }
+
+    static long key(int chunkX, int chunkY) {
+        return ((long) chunkX << 32) | (chunkY & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public short tileAt(int gridX, int gridY) {
+        // arithmetic shift and mask also work for negative grid coordinates
+        TileChunk chunk = chunkAt(gridX >> CHUNK_SHIFT, gridY >> CHUNK_SHIFT);
+        if (chunk == null) {
+            return EMPTY;
+        }
+        return chunk.cells[((gridY & CHUNK_MASK) << CHUNK_SHIFT) | (gridX & CHUNK_MASK)];
+    }
+
+    public boolean isSolid(int gridX, int gridY) {
+        return tileAt(gridX, gridY) != EMPTY;
+    }
+
+    // tileAt for other threads than the game thread, EMPTY where the chunk is not decoded
+    public short loadedTileAt(int gridX, int gridY) {
+        TileChunk chunk = loadedChunkAt(gridX >> CHUNK_SHIFT, gridY >> CHUNK_SHIFT);
+        if (chunk == null) {
+            return EMPTY;
+        }
+        return chunk.cells[((gridY & CHUNK_MASK) << CHUNK_SHIFT) | (gridX & CHUNK_MASK)];
+    }
+
+    // The chunk if it is decoded, else null. Safe from any thread: chunks is read
+    // first and resize assigns it last, so keys is at least as new. A different
+    // length means the table grew in between, then it is read again.
+    public TileChunk loadedChunkAt(int chunkX, int chunkY) {
+        AtomicReferenceArray<TileChunk> chunks;
+        long[] keys;
+        do {
+            chunks = this.chunks;
+            keys = this.keys;
+        } while (keys.length != chunks.length());
+        long key = key(chunkX, chunkY);
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            long k = keys[i];
+            if (k == key) {
+                return chunks.get(i);
+            }
+            if (k == NO_KEY) {
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public TileChunk chunkAt(int chunkX, int chunkY) {
+        long key = key(chunkX, chunkY);
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            long k = keys[i];
+            if (k == key) {
+                TileChunk chunk = chunks.get(i);
+                return chunk != null ? chunk : decodeLazy(i);
+            }
+            if (k == NO_KEY) {
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public void setTile(int gridX, int gridY, short variantId) {
+        int chunkX = gridX >> CHUNK_SHIFT;
+        int chunkY = gridY >> CHUNK_SHIFT;
+        TileChunk chunk = chunkAt(chunkX, chunkY);
+        if (chunk == null) {
+            if (variantId == EMPTY) {
+                return;
+            }
+            chunk = new TileChunk(chunkX, chunkY);
+            insert(key(chunkX, chunkY), chunk, NO_ENTRY);
+        }
+        int cell = ((gridY & CHUNK_MASK) << CHUNK_SHIFT) | (gridX & CHUNK_MASK);
+        short old = chunk.cells[cell];
+        if (old == variantId) {
+            return;
+        }
+        if (old != EMPTY) {
+            chunk.count--;
+            tilesCount--;
+        }
+        if (variantId != EMPTY) {
+            chunk.count++;
+            tilesCount++;
+        }
+        chunk.cells[cell] = variantId;
+        chunk.version++;
+        edits++;
+    }
+
+    // counts undecoded chunks too
+    public int chunkCount() {
+        return chunkCount;
+    }
+
+    // Registers a chunk of the source that will be decoded on first access. Only
+    // one source per grid, the chunk must not be in the grid yet.
+    public void addLazyChunk(MapFile source, int entry, int chunkX, int chunkY, int tileCount) {
+        if (lazySource != null && lazySource != source) {
+            throw new RuntimeException("TileGrid already has chunks of another map file");
+        }
+        lazySource = source;
+        insert(key(chunkX, chunkY), null, entry);
+        tilesCount += tileCount;
+    }
+
+    // Every chunk, decoding the lazy ones
+    public void forEachChunk(Consumer<TileChunk> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != NO_KEY) {
+                TileChunk chunk = chunks.get(i);
+                action.accept(chunk != null ? chunk : decodeLazy(i));
+            }
+        }
+    }
+
+    // MapFile entry of the chunk if it is in the grid but not decoded, else -1
+    public int undecodedEntry(int chunkX, int chunkY) {
+        int slot = slotOf(key(chunkX, chunkY));
+        return slot >= 0 && chunks.get(slot) == null ? lazyEntries[slot] : NO_ENTRY;
+    }
+
+    // Puts back a chunk decoded somewhere else, false if it was decoded meanwhile
+    public boolean install(TileChunk chunk) {
+        int slot = slotOf(key(chunk.chunkX, chunk.chunkY));
+        return slot >= 0 && chunks.compareAndSet(slot, null, chunk);
+    }
+
+    // Drops the decoded MapFile chunks outside the given chunk range, they are
+    // decoded again when needed. Chunks changed since they were decoded are kept
+    // as the file does not have the changes. Returns how many were dropped,
+    // residentFileChunks is updated on the way.
+    public int evictOutside(int minChunkX, int minChunkY, int maxChunkX, int maxChunkY) {
+        int evicted = 0, resident = 0;
+        for (int i = 0; i < keys.length; i++) {
+            TileChunk chunk = chunks.get(i);
+            if (chunk == null || lazyEntries[i] == NO_ENTRY) {
+                continue;
+            }
+            if (chunk.version == 0 && (chunk.chunkX < minChunkX || chunk.chunkX > maxChunkX
+                    || chunk.chunkY < minChunkY || chunk.chunkY > maxChunkY)) {
+                chunks.set(i, null);
+                evicted++;
+            } else {
+                resident++;
+            }
+        }
+        residentFileChunks = resident;
+        return evicted;
+    }
+
+    // The physics workers of one step may race to decode the same chunk. That only
+    // costs a second decode: the first one stored wins, every thread goes on with
+    // it and only that one is counted.
+    private TileChunk decodeLazy(int slot) {
+        TileChunk chunk = lazySource.decodeChunk(lazyEntries[slot]);
+        if (!chunks.compareAndSet(slot, null, chunk)) {
+            return chunks.get(slot);
+        }
+        lazyDecodes.incrementAndGet();
+        return chunk;
+    }
+
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            long k = keys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == NO_KEY) {
+                return -1;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private void insert(long key, TileChunk chunk, int lazyEntry) {
+        // keeping the table at most half full keeps the probe chains short
+        if ((chunkCount + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        place(keys, chunks, lazyEntries, key, chunk, lazyEntry);
+        chunkCount++;
+    }
+
+    private static void place(long[] keys, AtomicReferenceArray<TileChunk> chunks, int[] lazyEntries,
+            long key, TileChunk chunk, int lazyEntry) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != NO_KEY) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        chunks.set(i, chunk);
+        lazyEntries[i] = lazyEntry;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        AtomicReferenceArray<TileChunk> oldChunks = chunks;
+        int[] oldLazyEntries = lazyEntries;
+        long[] newKeys = new long[capacity];
+        AtomicReferenceArray<TileChunk> newChunks = new AtomicReferenceArray<>(capacity);
+        int[] newLazyEntries = new int[capacity];
+        Arrays.fill(newKeys, NO_KEY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != NO_KEY) {
+                place(newKeys, newChunks, newLazyEntries, oldKeys[i], oldChunks.get(i), oldLazyEntries[i]);
+            }
+        }
+        // filled before they are visible, chunks last (volatile) for loadedChunkAt
+        keys = newKeys;
+        lazyEntries = newLazyEntries;
+        chunks = newChunks;
+    }
+}
+
+// A CHUNK_SIZE x CHUNK_SIZE block of the map, cells are stored row by row
+class TileChunk {
+    static final int CELLS = TileGrid.CHUNK_SIZE * TileGrid.CHUNK_SIZE;
+
+    final int chunkX, chunkY;
+    final short[] cells;
+    int count;
+    int version; // bumped on every change so baked images know they are stale
+
+    public TileChunk(int chunkX, int chunkY) {
+        this(chunkX, chunkY, new short[CELLS], 0);
+    }
+
+    // cells and count are filled before the chunk goes into a TileGrid, which
+    // publishes it to other threads
+    public TileChunk(int chunkX, int chunkY, short[] cells, int count) {
+        this.chunkX = chunkX;
+        this.chunkY = chunkY;
+        this.cells = cells;
+        this.count = count;
+    }
+}
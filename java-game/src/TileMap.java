@@ -1,89 +1,257 @@
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Arrays;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.List;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 
 
-class TileMap {
-    Map<String, OnGridTile> ongridTilesMap;
-    OnGridTile[] onGridTiles;
-    int tilesCount;
+class TileMap implements TileSink {
+    static final int CHUNK_SIZE = TileGrid.CHUNK_SIZE; // tiles per chunk side
+    static final long DEFAULT_CHUNK_CACHE_BUDGET = 64L * 1024 * 1024; // bytes of baked chunk images
+
+    TileGrid grid = new TileGrid();
+    ChunkImageCache chunkCache;
+    boolean useChunkCache = true; // false draws every visible tile one by one
+    int tileSize;
+    // With App's --pixel-scale frames are drawn through a 1/pixelScale transform.
+    // Chunk images are then baked that much smaller, drawing one stays a copy
+    // instead of a scaled blit. Only when tiles come out as whole pixels.
+    int pixelScale = 1;
+    int drawCallsLastFrame;
     TileVariantRegistry registry;
     Camera camera;
+    private TileChunk[] visibleChunks = new TileChunk[64]; // of the last collectVisibleChunks
+    MapFile source; // binary map the grid decodes its chunks from, null when it is all in memory
 
     public TileMap(MapData map, TileVariantRegistry registry, Camera camera) {
-        this.registry = registry;
-        this.ongridTilesMap = new HashMap<String, OnGridTile>();
+        this(registry, camera);
         loadMapData(map);
+    }
+
+    // empty map, filled with setTile or by Maploader.streamMap
+    public TileMap(TileVariantRegistry registry, Camera camera) {
+        this.registry = registry;
         this.camera = camera;
+        setTileSize(32);
+    }
+
+    // baked chunk images depend on the tile size, so they are started over
+    @Override
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+        this.chunkCache = new ChunkImageCache(CHUNK_SIZE * tileSize / bakeScale(), DEFAULT_CHUNK_CACHE_BUDGET,
+                registry);
+    }
+
+    public void setPixelScale(int pixelScale) {
+        this.pixelScale = pixelScale;
+        setTileSize(tileSize);
+    }
+
+    private int bakeScale() {
+        return tileSize % pixelScale == 0 ? pixelScale : 1;
+    }
+
+    // variant id of the tile at the given grid cell, TileGrid.EMPTY if there is none
+    public short tileAt(int gridX, int gridY) {
+        return grid.tileAt(gridX, gridY);
+    }
+
+    // tileAt that never decodes a chunk, for drawing (see TileGrid)
+    public short loadedTileAt(int gridX, int gridY) {
+        return grid.loadedTileAt(gridX, gridY);
+    }
+
+    public TileVariant variantAt(int gridX, int gridY) {
+        return registry.byId(grid.tileAt(gridX, gridY));
+    }
+
+    public int tilesCount() {
+        return grid.tilesCount;
     }
 
     public void render(Graphics g) {
+        render(g, camera.cameraOffsetX, camera.cameraOffsetY);
+    }
+
+    // Draws the map for the given camera offset (the one of a RenderSnapshot when
+    // drawing from another thread than the game loop)
+    public void render(Graphics g, double cameraOffsetX, double cameraOffsetY) {
+        // the viewport starts where the camera offset moves the screen origin to
+        renderRegion(g, cameraOffsetX, cameraOffsetY, 0, 0, camera.viewPort.w, camera.viewPort.h);
+    }
+
+    // Draws the chunks overlapping the screen rectangle x, y, w, h. Tiles of those
+    // chunks outside of it are drawn too, clip g to stay inside.
+    public void renderRegion(Graphics g, double cameraOffsetX, double cameraOffsetY, int x, int y, int w, int h) {
         g.setColor(Color.BLACK);
-        for (OnGridTile tile : onGridTiles) {
-            if (tile != null) {
-                g.drawImage(tile.tileVariant.image, (int) (tile.rect.xPos + camera.cameraOffsetX),
-                        (int) (tile.rect.yPos + camera.cameraOffsetY), tile.rect.w,
-                        tile.rect.h, null);
+        drawCallsLastFrame = 0;
+        int chunkPixels = CHUNK_SIZE * tileSize;
+        int count = collectVisibleChunks(cameraOffsetX, cameraOffsetY, x, y, w, h);
+        for (int i = 0; i < count; i++) {
+            TileChunk chunk = visibleChunks[i];
+            if (useChunkCache) {
+                // whole chunk is one pre-baked image, so one draw call instead of up to 256
+                g.drawImage(chunkCache.get(chunk, tileSize / bakeScale()),
+                        (int) (chunk.chunkX * chunkPixels + cameraOffsetX),
+                        (int) (chunk.chunkY * chunkPixels + cameraOffsetY), chunkPixels, chunkPixels, null);
+                drawCallsLastFrame++;
+                continue;
+            }
+            for (int cell = 0; cell < chunk.cells.length; cell++) {
+                if (chunk.cells[cell] == TileGrid.EMPTY) {
+                    continue;
+                }
+                int tileX = chunk.chunkX * chunkPixels + (cell % CHUNK_SIZE) * tileSize;
+                int tileY = chunk.chunkY * chunkPixels + (cell / CHUNK_SIZE) * tileSize;
+                g.drawImage(registry.byId(chunk.cells[cell]).image, (int) (tileX + cameraOffsetX),
+                        (int) (tileY + cameraOffsetY), tileSize, tileSize, null);
+                drawCallsLastFrame++;
                 // rendering actual position of tiles
                 // g.setColor(new Color(225, 0, 0, 225));
-                // g.drawRect((int) tile.rect.xPos, (int) tile.rect.yPos, tile.rect.w,
-                // tile.rect.h);
+                // g.drawRect(x, y, tileSize, tileSize);
+            }
+        }
+    }
+
+    // Same as render, every tile recorded into the rasterizer on its own (baked
+    // chunk images are redrawn in place, the rasterizer's copies would go stale)
+    public void render(SoftwareRasterizer raster, double cameraOffsetX, double cameraOffsetY) {
+        drawCallsLastFrame = 0;
+        int chunkPixels = CHUNK_SIZE * tileSize;
+        int count = collectVisibleChunks(cameraOffsetX, cameraOffsetY, 0, 0, camera.viewPort.w, camera.viewPort.h);
+        for (int i = 0; i < count; i++) {
+            TileChunk chunk = visibleChunks[i];
+            for (int cell = 0; cell < chunk.cells.length; cell++) {
+                if (chunk.cells[cell] == TileGrid.EMPTY) {
+                    continue;
+                }
+                int tileX = chunk.chunkX * chunkPixels + (cell % CHUNK_SIZE) * tileSize;
+                int tileY = chunk.chunkY * chunkPixels + (cell / CHUNK_SIZE) * tileSize;
+                raster.drawImage(registry.byId(chunk.cells[cell]).image, (int) (tileX + cameraOffsetX),
+                        (int) (tileY + cameraOffsetY), tileSize, tileSize);
+                drawCallsLastFrame++;
+            }
+        }
+    }
+
+    // Puts the decoded, non-empty chunks overlapping the screen rectangle x, y, w, h
+    // into visibleChunks, row by row, and returns how many. Only the chunks
+    // overlapping the region are visited, so the cost depends on the screen size
+    // instead of the total amount of tiles in the map
+    private int collectVisibleChunks(double cameraOffsetX, double cameraOffsetY, int x, int y, int w, int h) {
+        if (tileSize == 0) {
+            return 0;
+        }
+        double viewX = x - cameraOffsetX;
+        double viewY = y - cameraOffsetY;
+        int chunkPixels = CHUNK_SIZE * tileSize;
+        int startChunkX = (int) Math.floor(viewX / chunkPixels);
+        int endChunkX = (int) Math.floor((viewX + w - 1) / chunkPixels);
+        int startChunkY = (int) Math.floor(viewY / chunkPixels);
+        int endChunkY = (int) Math.floor((viewY + h - 1) / chunkPixels);
+
+        int count = 0;
+        for (int chunkY = startChunkY; chunkY <= endChunkY; chunkY++) {
+            for (int chunkX = startChunkX; chunkX <= endChunkX; chunkX++) {
+                TileChunk chunk = grid.loadedChunkAt(chunkX, chunkY);
+                if (chunk == null || chunk.count == 0) {
+                    continue;
+                }
+                if (count == visibleChunks.length) {
+                    visibleChunks = Arrays.copyOf(visibleChunks, count * 2);
+                }
+                visibleChunks[count++] = chunk;
             }
         }
+        return count;
     }
 
     public void loadMapData(MapData mapData) {
         if (mapData == null)
             return;
 
-        tilesCount = mapData.tiles.size();
-        onGridTiles = new OnGridTile[tilesCount];
-
-        int i = 0;
+        setTileSize(mapData.tileSize);
         for (TileData tile : mapData.tiles) {
-            TileVariant variant = registry.get(tile.type, tile.variant);
-            if (variant == null) {
-                throw new RuntimeException(
-                        "TileVariant not regestered: " + tile.type + " variant " + tile.variant);
-            }
-            onGridTiles[i++] = new OnGridTile(variant, tile.gridX * mapData.tileSize, tile.gridY * mapData.tileSize,
-                    mapData.tileSize, mapData.tileSize);
-            ongridTilesMap.put((tile.gridX + "," + tile.gridY),
-                    new OnGridTile(variant, tile.gridX * mapData.tileSize, tile.gridY * mapData.tileSize,
-                            mapData.tileSize, mapData.tileSize));
+            placeTile(tile.type, tile.variant, tile.gridX, tile.gridY);
+        }
+    }
+
+    @Override
+    public void placeTile(String type, int variant, int gridX, int gridY) {
+        TileVariant tileVariant = registry.get(type, variant);
+        if (tileVariant == null) {
+            throw new RuntimeException("TileVariant not regestered: " + type + " variant " + variant);
         }
+        setTile(gridX, gridY, tileVariant);
+    }
+
+    // Places (or with a null variant removes) a tile. The chunk holding it is
+    // marked changed so its baked image is rebuilt the next time it is drawn.
+    public void setTile(int gridX, int gridY, TileVariant variant) {
+        grid.setTile(gridX, gridY, variant == null ? TileGrid.EMPTY : variant.id);
     }
 }
 
 class TileVariantRegistry {
-    private final Map<String, TileVariant> tileVariants = new HashMap<>();
+    // variants of every type indexed by variant number, so a lookup does not build a key string
+    private final Map<String, TileVariant[]> tileVariants = new HashMap<>();
+    private TileVariant[] byId = new TileVariant[16]; // index 0 is TileGrid.EMPTY
+    private short nextId = 1;
+
+    public void register(String type, int variant, BufferedImage img) {
+        TileVariant existing = get(type, variant);
+        short id = existing != null ? existing.id : nextId++;
+        if (id >= byId.length) {
+            byId = Arrays.copyOf(byId, byId.length * 2);
+        }
+        TileVariant tileVariant = new TileVariant(id, type, variant, img);
+        TileVariant[] variants = tileVariants.getOrDefault(type, new TileVariant[0]);
+        if (variant >= variants.length) {
+            variants = Arrays.copyOf(variants, variant + 1);
+            tileVariants.put(type, variants);
+        }
+        variants[variant] = tileVariant;
+        byId[id] = tileVariant;
+    }
 
-    private String key(String type, int variant) {
-        return type + ":" + variant;
+    public TileVariant byId(short id) {
+        return byId[id];
     }
 
-    public void register(String type, int variant, BufferedImage img) {
-        tileVariants.put(key(type, variant), new TileVariant(type, variant, img));
+    // registered variants, their ids go from 1 to size()
+    public int size() {
+        return nextId - 1;
     }
 
     public TileVariant get(String type, int variant) {
-        return tileVariants.get(key(type, variant));
+        TileVariant[] variants = tileVariants.get(type);
+        if (variants == null || variant < 0 || variant >= variants.length) {
+            return null;
+        }
+        return variants[variant];
     }
 }
 
 class TileVariant {
+    final short id; // what TileGrid stores for this variant
     final String type;
     final int variant;
     final BufferedImage image;
 
-    public TileVariant(String type, int variant, BufferedImage image) {
+    public TileVariant(short id, String type, int variant, BufferedImage image) {
+        this.id = id;
         this.type = type;
         this.variant = variant;
         this.image = image;
@@ -133,13 +301,90 @@ class Maploader {
 
     //
     public static MapData loadMap(String resourcePath) {
-        Gson gson = new Gson();
         try (var reader = new InputStreamReader(App.class.getResourceAsStream("/" + resourcePath))) {
-            return gson.fromJson(reader, MapData.class);
+            return loadMap(reader);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
     }
+
+    // same as above for maps that are not resources (generated, benchmarks, ...)
+    public static MapData loadMap(Reader reader) {
+        return new Gson().fromJson(reader, MapData.class);
+    }
+
+    // binary map files (MapFile.EXTENSION) on disk are memory mapped, anything
+    // else is a JSON resource streamed into the map
+    public static void load(String path, TileMap tileMap) {
+        if (path.endsWith(MapFile.EXTENSION)) {
+            MapFile.load(Path.of(path), tileMap);
+        } else {
+            streamMap(path, tileMap);
+        }
+    }
+
+    public static int streamMap(String resourcePath, TileSink sink) {
+        InputStream is = App.class.getResourceAsStream("/" + resourcePath);
+        if (is == null) {
+            throw new RuntimeException("Map not found: " + resourcePath);
+        }
+        try (var reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8), 1 << 16)) {
+            return streamMap(reader, sink);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read map " + resourcePath, e);
+        }
+    }
+
+    // Reads the map JSON token by token and hands every tile straight to the sink
+    // (usually a TileMap writing it into its grid). Unlike loadMap no TileData
+    // objects or tile list are built, only short-lived token strings, so the heap
+    // never holds more than the grid. Returns the number of tiles read.
+    public static int streamMap(Reader reader, TileSink sink) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        int tilesRead = 0;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "tileSize" -> sink.setTileSize(json.nextInt());
+                case "tiles" -> {
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        readTile(json, sink);
+                        tilesRead++;
+                    }
+                    json.endArray();
+                }
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return tilesRead;
+    }
+
+    // fields can come in any order, the tile is placed once the object is closed
+    private static void readTile(JsonReader json, TileSink sink) throws IOException {
+        String type = null;
+        int variant = 0, gridX = 0, gridY = 0;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "type" -> type = json.nextString();
+                case "variant" -> variant = json.nextInt();
+                case "gridX" -> gridX = json.nextInt();
+                case "gridY" -> gridY = json.nextInt();
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        sink.placeTile(type, variant, gridX, gridY);
+    }
+}
+
+// receives the tiles of a map as Maploader.streamMap reads them
+interface TileSink {
+    void setTileSize(int tileSize);
+
+    void placeTile(String type, int variant, int gridX, int gridY);
 }
 